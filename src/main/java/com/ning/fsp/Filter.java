@@ -1,20 +1,35 @@
 package com.ning.fsp;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.lang.math.LongRange;
 
-import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.ning.fsp.filtering.AdaptivePredicate;
+import com.ning.fsp.filtering.CombinableFilterCriteria;
+import com.ning.fsp.filtering.CompiledPredicate;
 import com.ning.fsp.filtering.FilterCriteria;
 import com.ning.fsp.filtering.FilterCriteriaFactory;
+import com.ning.fsp.filtering.FilteredList;
+import com.ning.fsp.filtering.ParallelFilter;
+import com.ning.fsp.filtering.RangeFilterCriteria;
+import com.ning.fsp.filtering.index.FilterIndex;
+import com.ning.fsp.filtering.index.IndexedDataset;
+import com.ning.fsp.filtering.index.RowSet;
+import com.ning.fsp.filtering.index.TimePartitionedDataset;
 import com.ning.fsp.util.Pair;
 import static com.ning.fsp.util.Pair.pair;
 
@@ -39,6 +54,18 @@ public class Filter<T> {
     private boolean cheap = false;
     private boolean expensive = false;
 
+    private boolean adaptive = false;
+    private boolean materialized = false;
+
+    private ExecutorService executor = null;
+    private int parallelism = 1;
+    private int parallelThreshold = 0;
+    private int parallelChunksPerTask = ParallelFilter.DEFAULT_CHUNKS_PER_TASK;
+    private Predicate<T> compiledPredicate = null;
+    // The number of expensive criterias when the predicate was compiled. Any added criteria, through put() or
+    // through FilterCriteriaCollector.add(), changes it and makes the predicate compile again on the next use.
+    private int compiledCriteriaCount = 0;
+
     /**
      * Constructs a new Filter.
      * @param filterParameters The parameters to filter on.
@@ -94,6 +121,70 @@ public class Filter<T> {
         }
     }
 
+    /**
+     * Enables or disables adaptive evaluation of the expensive filters. An adaptive filter samples how selective
+     * and how costly each field is while filtering and evaluates the fields that reject the most elements per
+     * nanosecond first.
+     */
+    public synchronized void setAdaptive(final boolean adaptive) {
+        this.adaptive = adaptive;
+        compiledPredicate = null;
+    }
+
+    public synchronized boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Enables or disables materialized filtering. A materialized filter evaluates the expensive filters exactly once per
+     * element and returns a random access list of the matches, instead of a live view that evaluates the filters again
+     * on every size() or iteration.
+     */
+    public synchronized void setMaterialized(final boolean materialized) {
+        this.materialized = materialized;
+    }
+
+    public synchronized boolean isMaterialized() {
+        return materialized;
+    }
+
+    /**
+     * Enables parallel filtering. Random access lists with at least <code>threshold</code> elements are split into
+     * chunks that are filtered on the given executor. The result keeps the order of the input, but it is computed
+     * eagerly instead of being a lazy view. The adapters of the expensive filters must be thread safe. Every thread
+     * filters {@link ParallelFilter#DEFAULT_CHUNKS_PER_TASK} chunks.
+     *
+     * @param executor The executor to run the filter tasks on. Null disables parallel filtering.
+     * @param parallelism The number of threads of the executor to use.
+     * @param threshold The minimum number of elements for a parallel filter.
+     */
+    public synchronized void setParallel(final ExecutorService executor, final int parallelism, final int threshold) {
+        setParallel(executor, parallelism, threshold, ParallelFilter.DEFAULT_CHUNKS_PER_TASK);
+    }
+
+    /**
+     * Enables parallel filtering with a given granularity. Every thread filters <code>chunksPerTask</code> chunks
+     * of the list. More chunks even out chunks that are slower to filter than others, fewer chunks cost less
+     * scheduling.
+     *
+     * @param executor The executor to run the filter tasks on. Null disables parallel filtering.
+     * @param parallelism The number of threads of the executor to use.
+     * @param threshold The minimum number of elements for a parallel filter.
+     * @param chunksPerTask The number of chunks per thread, at least 1.
+     */
+    public synchronized void setParallel(final ExecutorService executor, final int parallelism, final int threshold, final int chunksPerTask) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1!");
+        }
+        if (chunksPerTask < 1) {
+            throw new IllegalArgumentException("chunksPerTask must be at least 1!");
+        }
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.parallelThreshold = threshold;
+        this.parallelChunksPerTask = chunksPerTask;
+    }
+
     /**
      * Returns true if the filter contains expensive (i.e. in-memory) filters.
      * @return True if at least one filter needs to run in-memory.
@@ -132,14 +223,18 @@ public class Filter<T> {
             return elements;
         }
 
-        final Predicate<T> predicate = Predicates.and(Collections2.transform(expensiveFilters.values(), new Function<FilterCriteriaCollector<T>, Predicate<T>>() {
-            @Override
-            public Predicate<T> apply(final FilterCriteriaCollector<T> collector) {
-                return collector.getPredicate();
+        if (isParallel(elements)) {
+            return filterParallel((List<T>) elements);
+        }
+
+        if (isMaterialized()) {
+            if (elements instanceof List && elements instanceof RandomAccess) {
+                return new FilteredList<T>((List<T>) elements, getPredicate());
             }
-        }));
+            return Lists.newArrayList(Iterables.filter(elements, getPredicate()));
+        }
 
-        return Collections2.filter(elements, predicate);
+        return Collections2.filter(elements, getPredicate());
     }
 
     /**
@@ -156,16 +251,169 @@ public class Filter<T> {
             return elements;
         }
 
-        final Predicate<T> predicate = Predicates.and(Collections2.transform(expensiveFilters.values(), new Function<FilterCriteriaCollector<T>, Predicate<T>>() {
-            @Override
-            public Predicate<T> apply(final FilterCriteriaCollector<T> collector) {
-                return collector.getPredicate();
+        if (isParallel(elements)) {
+            return filterParallel((List<T>) elements);
+        }
+
+        return Iterables.filter(elements, getPredicate());
+    }
+
+    /**
+     * Filters the rows of an indexed dataset. The criterias of indexed fields are answered by the indexes of the
+     * dataset; all other criterias are only tested on the rows that the indexes left over. The dataset is in memory,
+     * so unlike {@link #filter(Collection)} this applies the cheap filters as well.
+     *
+     * @param dataset The dataset to filter.
+     * @return The matching rows, in the order of the dataset. It is never null.
+     */
+    public List<T> filter(final IndexedDataset<T> dataset) {
+
+        final List<T> elements = dataset.getElements();
+        final ListMultimap<String, FilterCriteriaCollector<T>> filters = getAllFilters();
+        if (filters.isEmpty()) {
+            return elements;
+        }
+
+        RowSet rows = null;
+        final List<FilterCriteriaCollector<T>> remaining = Lists.newArrayList();
+        for (Map.Entry<String, FilterCriteriaCollector<T>> entry : filters.entries()) {
+            final FilterIndex<T> index = dataset.getIndex(entry.getKey());
+            final RowSet fieldRows = (index == null) ? null : entry.getValue().lookup(index, elements.size());
+
+            if (fieldRows != null) {
+                rows = (rows == null) ? fieldRows : rows.and(fieldRows);
+            }
+            if (fieldRows == null || !index.isExact()) {
+                remaining.add(entry.getValue());
+            }
+        }
+
+        final int[] candidates = (rows == null) ? null : rows.toArray();
+        return new FilteredList<T>(elements, candidates, remaining.isEmpty() ? null : new CompiledPredicate<T>(remaining));
+    }
+
+    /**
+     * Filters the rows of a time partitioned dataset. Partitions that lie outside the dates requested by the criterias
+     * of the date field are skipped without testing any row. In partitions that lie completely inside, only the other
+     * criterias are tested. The dataset is in memory, so this applies the cheap filters as well.
+     *
+     * @param dataset The dataset to filter.
+     * @return The matching rows, ordered by partition. It is never null.
+     */
+    public List<T> filter(final TimePartitionedDataset<T> dataset) {
+
+        final List<T> result = Lists.newArrayList();
+        final List<TimePartitionedDataset.Partition<T>> partitions = dataset.getPartitions();
+
+        final ListMultimap<String, FilterCriteriaCollector<T>> filters = getAllFilters();
+        if (filters.isEmpty()) {
+            for (TimePartitionedDataset.Partition<T> partition : partitions) {
+                result.addAll(partition);
+            }
+            return result;
+        }
+
+        final List<FilterCriteriaCollector<T>> dateFilters = filters.removeAll(dataset.getFieldName());
+
+        final CompiledPredicate<T> otherPredicate = new CompiledPredicate<T>(filters.values());
+        final CompiledPredicate<T> allPredicate;
+        if (dateFilters.isEmpty()) {
+            allPredicate = otherPredicate;
+        }
+        else {
+            final List<FilterCriteriaCollector<T>> allFilters = Lists.newArrayList(dateFilters);
+            allFilters.addAll(filters.values());
+            allPredicate = new CompiledPredicate<T>(allFilters);
+        }
+
+        for (TimePartitionedDataset.Partition<T> partition : partitions) {
+            final Boolean dateMatches = matchesRange(dateFilters, partition.getRange());
+            if (Boolean.FALSE.equals(dateMatches)) {
+                continue;
             }
-        }));
 
-        return Iterables.filter(elements, predicate);
+            final Predicate<T> predicate = (dateMatches == null) ? allPredicate : otherPredicate;
+            for (T element : partition) {
+                if (predicate.apply(element)) {
+                    result.add(element);
+                }
+            }
+        }
+        return result;
     }
 
+    /**
+     * Decides all collectors of a field for the elements whose keys lie in a range, see
+     * {@link FilterCriteriaCollector#matchesRange(LongRange)}.
+     */
+    private static <T> Boolean matchesRange(final List<FilterCriteriaCollector<T>> collectors, final LongRange keys) {
+        Boolean result = Boolean.TRUE;
+        for (FilterCriteriaCollector<T> collector : collectors) {
+            final Boolean matches = collector.matchesRange(keys);
+            if (Boolean.FALSE.equals(matches)) {
+                return Boolean.FALSE;
+            }
+            if (matches == null) {
+                result = null;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the collectors of the cheap and the expensive filters by field. A field has two collectors if some of its
+     * criterias are cheap and others expensive.
+     */
+    private synchronized ListMultimap<String, FilterCriteriaCollector<T>> getAllFilters() {
+        final ListMultimap<String, FilterCriteriaCollector<T>> filters = ArrayListMultimap.create();
+        for (Map.Entry<String, FilterCriteriaCollector<T>> entry : cheapFilters.entrySet()) {
+            filters.put(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, FilterCriteriaCollector<T>> entry : expensiveFilters.entrySet()) {
+            filters.put(entry.getKey(), entry.getValue());
+        }
+        return filters;
+    }
+
+    /**
+     * Returns the predicate for all expensive filters. The predicate is compiled once into a flat evaluator
+     * and reused until the filter changes. Adaptive filters reorder the fields while the predicate is used.
+     *
+     * @return A predicate that matches the elements passing all expensive filters.
+     */
+    public synchronized Predicate<T> getPredicate() {
+        final int criteriaCount = getExpensiveCriteriaCount();
+        if (compiledPredicate == null || criteriaCount != compiledCriteriaCount) {
+            compiledCriteriaCount = criteriaCount;
+            final CompiledPredicate<T> predicate = new CompiledPredicate<T>(expensiveFilters.values());
+            compiledPredicate = adaptive ? new AdaptivePredicate<T>(predicate) : predicate;
+        }
+        return compiledPredicate;
+    }
+
+    private synchronized int getExpensiveCriteriaCount() {
+        int criteriaCount = 0;
+        for (FilterCriteriaCollector<T> collector : expensiveFilters.values()) {
+            criteriaCount += collector.getCount();
+        }
+        return criteriaCount;
+    }
+
+    private synchronized boolean isParallel(final Iterable<T> elements) {
+        return executor != null && elements instanceof List && elements instanceof RandomAccess && ((List<T>) elements).size() >= parallelThreshold;
+    }
+
+    private List<T> filterParallel(final List<T> elements) {
+        final ExecutorService filterExecutor;
+        final int filterParallelism;
+        final int filterChunksPerTask;
+        synchronized (this) {
+            filterExecutor = executor;
+            filterParallelism = parallelism;
+            filterChunksPerTask = parallelChunksPerTask;
+        }
+        return ParallelFilter.filter(elements, getPredicate(), filterExecutor, filterParallelism, filterChunksPerTask);
+    }
 
     public static final class FilterCriteriaCollector<T> {
 
@@ -175,8 +423,8 @@ public class Filter<T> {
 
         private final List<Pair<Integer, Object>> matches = Lists.newArrayList();
 
-        private Predicate<T> includePredicate = null;
-        private Predicate<T> excludePredicate = null;
+        private final List<FilterCriteria<T>> includeCriterias = Lists.newArrayList();
+        private final List<FilterCriteria<T>> excludeCriterias = Lists.newArrayList();
         private int count = 0;
 
         public FilterCriteriaCollector(final FilterCriteria<T> criteria) {
@@ -201,13 +449,11 @@ public class Filter<T> {
            // This is used only for the cheap branch (which in turn does not use the inclusion / exclusion logic.
             matches.add(pair(count++, criteria.getMatch()));
 
-            final Predicate<T> newPredicate = criteria.getPredicate();
-
             if (criteria.isIncluding()) {
-                this.includePredicate = includePredicate == null ? newPredicate : Predicates.<T>or(includePredicate, newPredicate);
+                includeCriterias.add(criteria);
             }
             else {
-                this.excludePredicate = excludePredicate == null ? newPredicate : Predicates.<T>or(excludePredicate, newPredicate);
+                excludeCriterias.add(criteria);
             }
         }
 
@@ -215,6 +461,10 @@ public class Filter<T> {
             return expensive;
         }
 
+        private synchronized int getCount() {
+            return count;
+        }
+
         public boolean isSingle() {
             return matches.size() == 1;
         }
@@ -227,9 +477,190 @@ public class Filter<T> {
             return matches;
         }
 
+        /**
+         * Decides this collector for all elements whose keys lie in a range, without testing them. This only works if
+         * all criterias are range criterias.
+         *
+         * @param keys The range of the keys, or null for elements without a key.
+         * @return TRUE if all of these elements match, FALSE if none of them does, or null if they must be tested.
+         */
+        public synchronized Boolean matchesRange(final LongRange keys) {
+            for (FilterCriteria<T> criteria : Iterables.concat(includeCriterias, excludeCriterias)) {
+                if (!(criteria instanceof RangeFilterCriteria)) {
+                    return null;
+                }
+            }
+
+            if (keys == null) {
+                // Elements without a key match no criteria.
+                return includeCriterias.isEmpty();
+            }
+
+            boolean allIncluded = includeCriterias.isEmpty();
+            boolean anyIncluded = allIncluded;
+            for (FilterCriteria<T> criteria : includeCriterias) {
+                final LongRange range = ((RangeFilterCriteria<T>) criteria).getRange();
+                if (range != null && range.overlapsRange(keys)) {
+                    anyIncluded = true;
+                    allIncluded |= range.containsRange(keys);
+                }
+            }
+            if (!anyIncluded) {
+                return Boolean.FALSE;
+            }
+
+            for (FilterCriteria<T> criteria : excludeCriterias) {
+                final LongRange range = ((RangeFilterCriteria<T>) criteria).getRange();
+                if (range != null && range.overlapsRange(keys)) {
+                    return range.containsRange(keys) ? Boolean.FALSE : null;
+                }
+            }
+            return allIncluded ? Boolean.TRUE : null;
+        }
+
+        /**
+         * Looks up the rows matching this collector in an index.
+         *
+         * @param index The index of the field.
+         * @param rowCount The number of rows of the indexed dataset.
+         * @return The matching rows, or null if the index can not answer all criterias. An inexact index only answers
+         *         the including criterias, the excluding criterias are left to the predicates.
+         */
+        public synchronized RowSet lookup(final FilterIndex<T> index, final int rowCount) {
+            RowSet rows = null;
+            for (FilterCriteria<T> criteria : includeCriterias) {
+                final RowSet criteriaRows = index.lookup(criteria);
+                if (criteriaRows == null) {
+                    return null;
+                }
+                rows = (rows == null) ? criteriaRows : rows.or(criteriaRows);
+            }
+
+            if (rows == null) {
+                if (!index.isExact()) {
+                    // Only excluding criterias, an inexact index can not narrow down the rows.
+                    return null;
+                }
+                rows = RowSet.all(rowCount);
+            }
+
+            if (index.isExact()) {
+                for (FilterCriteria<T> criteria : excludeCriterias) {
+                    final RowSet criteriaRows = index.lookup(criteria);
+                    if (criteriaRows == null) {
+                        return null;
+                    }
+                    rows = rows.andNot(criteriaRows);
+                }
+            }
+            return rows;
+        }
+
+        /**
+         * Returns the predicates of the including criterias. An element matches the collector if it matches any of them.
+         */
+        public synchronized List<Predicate<T>> getIncludePredicates() {
+            final CombinableFilterCriteria<T> combinable = getCombinableCriteria();
+            if (combinable != null) {
+                // All criterias of the field are evaluated together, in a single pass.
+                final List<Predicate<T>> predicates = Lists.newArrayList();
+                predicates.add(combinable.getCombinedPredicate(collectMatches(includeCriterias), collectMatches(excludeCriterias)));
+                return Collections.unmodifiableList(predicates);
+            }
+            return getPredicates(includeCriterias);
+        }
+
+        /**
+         * Returns the predicates of the excluding criterias. An element matches the collector only if it matches none of them.
+         */
+        public synchronized List<Predicate<T>> getExcludePredicates() {
+            if (getCombinableCriteria() != null) {
+                return Collections.emptyList();
+            }
+            return getPredicates(excludeCriterias);
+        }
+
         public synchronized Predicate<T> getPredicate() {
-            return Predicates.<T>and((includePredicate != null ? includePredicate : Predicates.<T>alwaysTrue()),
-                                     Predicates.not((excludePredicate != null ? excludePredicate : Predicates.<T>alwaysFalse())));
+            final List<Predicate<T>> includePredicates = getIncludePredicates();
+            final List<Predicate<T>> excludePredicates = getExcludePredicates();
+
+            return Predicates.<T>and((!includePredicates.isEmpty() ? Predicates.<T>or(includePredicates) : Predicates.<T>alwaysTrue()),
+                                     Predicates.not(Predicates.<T>or(excludePredicates)));
+        }
+
+        /**
+         * Returns a criteria that can combine all criterias of this collector, or null if there is none or
+         * the collector has only a single criteria.
+         */
+        @SuppressWarnings("unchecked")
+        private CombinableFilterCriteria<T> getCombinableCriteria() {
+            final List<FilterCriteria<T>> criterias = Lists.newArrayList(includeCriterias);
+            criterias.addAll(excludeCriterias);
+
+            if (criterias.size() < 2) {
+                return null;
+            }
+
+            Object combineKey = null;
+            for (FilterCriteria<T> criteria : criterias) {
+                final Object key = getCombineKey(criteria);
+                if (key == null || (combineKey != null && !combineKey.equals(key))) {
+                    return null;
+                }
+                combineKey = key;
+            }
+            return (CombinableFilterCriteria<T>) criterias.get(0);
+        }
+
+        /**
+         * Returns one predicate per criteria, except that criterias of the same kind are combined into a single
+         * predicate, so that a field repeated with many values does not test every value in turn.
+         */
+        @SuppressWarnings("unchecked")
+        private List<Predicate<T>> getPredicates(final List<FilterCriteria<T>> criterias) {
+            final Map<Object, List<FilterCriteria<T>>> groups = Maps.newLinkedHashMap();
+            final List<Predicate<T>> predicates = Lists.newArrayList();
+
+            for (FilterCriteria<T> criteria : criterias) {
+                final Object combineKey = getCombineKey(criteria);
+                if (combineKey == null) {
+                    predicates.add(criteria.getPredicate());
+                    continue;
+                }
+
+                List<FilterCriteria<T>> group = groups.get(combineKey);
+                if (group == null) {
+                    group = Lists.newArrayList();
+                    groups.put(combineKey, group);
+                }
+                group.add(criteria);
+            }
+
+            // The combined predicates are cheap, so they go first.
+            int index = 0;
+            for (List<FilterCriteria<T>> group : groups.values()) {
+                if (group.size() == 1) {
+                    predicates.add(index++, group.get(0).getPredicate());
+                }
+                else {
+                    final CombinableFilterCriteria<T> combinable = (CombinableFilterCriteria<T>) group.get(0);
+                    predicates.add(index++, combinable.getCombinedPredicate(collectMatches(group), Collections.emptyList()));
+                }
+            }
+            return Collections.unmodifiableList(predicates);
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object getCombineKey(final FilterCriteria<T> criteria) {
+            return (criteria instanceof CombinableFilterCriteria) ? ((CombinableFilterCriteria<T>) criteria).getCombineKey() : null;
+        }
+
+        private List<Object> collectMatches(final List<FilterCriteria<T>> criterias) {
+            final List<Object> criteriaMatches = Lists.newArrayListWithCapacity(criterias.size());
+            for (FilterCriteria<T> criteria : criterias) {
+                criteriaMatches.add(criteria.getMatch());
+            }
+            return criteriaMatches;
         }
     }
 }
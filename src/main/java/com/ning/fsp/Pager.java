@@ -1,10 +1,11 @@
 package com.ning.fsp;
 
 import java.util.Collection;
+import java.util.Iterator;
 
 import com.google.common.base.Predicate;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Collections2;
-import com.google.common.collect.Iterables;
 
 /**
  * The pager handles all the paging of result sets. It should be smart enough that, when
@@ -111,6 +112,10 @@ public class Pager<T> {
         return size;
     }
 
+    public PagerCost getCost() {
+        return cost;
+    }
+
     public Filter<T> getFilter()
     {
         return filter;
@@ -140,7 +145,41 @@ public class Pager<T> {
             return elements;
         }
 
-        return Iterables.filter(elements, new PagerPredicate());
+        // Stop reading the elements once the window is closed, the source might be lazy.
+        return new Iterable<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return new PagerIterator(elements.iterator());
+            }
+        };
+    }
+
+    private class PagerIterator extends AbstractIterator<T>
+    {
+        private final Iterator<T> source;
+
+        private int count = 0;
+
+        private PagerIterator(final Iterator<T> source)
+        {
+            this.source = source;
+        }
+
+        @Override
+        protected T computeNext()
+        {
+            while (count < start && source.hasNext()) {
+                source.next();
+                count++;
+            }
+
+            // Compared as an offset into the window, start + size overflows for open ended windows.
+            if ((size == null || count - start < size) && source.hasNext()) {
+                count++;
+                return source.next();
+            }
+            return endOfData();
+        }
     }
 
     private class PagerPredicate implements Predicate<T>
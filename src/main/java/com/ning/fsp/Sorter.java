@@ -1,17 +1,36 @@
 package com.ning.fsp;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.commons.collections.CollectionUtils;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
+import com.ning.fsp.sorting.CompiledOrdering;
+import com.ning.fsp.sorting.ElementCodec;
+import com.ning.fsp.sorting.ExternalSort;
+import com.ning.fsp.sorting.GroupedTopSelector;
+import com.ning.fsp.sorting.IndexComparator;
+import com.ning.fsp.sorting.IndexSort;
+import com.ning.fsp.sorting.LazySortedIterable;
+import com.ning.fsp.sorting.MergingIterator;
+import com.ning.fsp.sorting.NormalizedKeyTable;
+import com.ning.fsp.sorting.ParallelSort;
 import com.ning.fsp.sorting.SortCriteria;
 import com.ning.fsp.sorting.SortCriteriaFactory;
+import com.ning.fsp.sorting.SortKeyTable;
+import com.ning.fsp.sorting.TopSelector;
+import com.ning.fsp.util.Adapter;
 
 
 /**
@@ -32,6 +51,19 @@ public class Sorter<T>
 
     private final List<SortCriteria<T>> criterias = Lists.newArrayList();
 
+    private Ordering<T> orderer;
+
+    private boolean keyCaching = false;
+    private boolean normalizedKeys = false;
+
+    private boolean hybrid = false;
+    private Ordering<T> prefixOrderer;
+    private Sorter<T> tieBreaker;
+
+    private ExecutorService executor = null;
+    private int parallelism = 1;
+    private int parallelThreshold = Integer.MAX_VALUE;
+
     public Sorter(final List<? extends SortParameter> sortParameters,
                   final Map<String, SortCriteriaFactory<T>> criteriaMap)
     {
@@ -54,11 +86,77 @@ public class Sorter<T>
                 criterias.add(sortCriteriaFactory.getCriteria(sortParameter));
             }
         }
+        compile();
     }
 
     public void add(final SortCriteria<T> criteria)
     {
         criterias.add(criteria);
+        compile();
+    }
+
+    private void compile()
+    {
+        this.orderer = new CompiledOrdering<T>(criterias);
+
+        this.prefixOrderer = new CompiledOrdering<T>(getCheapPrefix());
+        this.tieBreaker = null;
+    }
+
+    /**
+     * Enables sort key caching. If all criterias expose their sort keys, every key is extracted once per
+     * element and the sort runs on the extracted keys. This pays off when the adapters are expensive
+     * (walking object graphs, parsing, lazy loading), as the adapters are called n times per criteria
+     * instead of about 2 n log n times.
+     *
+     * @param keyCaching True if sort keys should be extracted once per element.
+     */
+    public void setKeyCaching(final boolean keyCaching)
+    {
+        this.keyCaching = keyCaching;
+        this.tieBreaker = null;
+    }
+
+    public boolean isKeyCaching()
+    {
+        return keyCaching;
+    }
+
+    /**
+     * Enables normalized keys. If all criterias can encode their keys (long, int, date and string criterias), the
+     * keys of all criterias are encoded into a single binary key per element. Compound sorts then compare one byte
+     * array (mostly just its first eight bytes) instead of comparing column by column.
+     *
+     * @param normalizedKeys True if compound sorts should run on normalized binary keys.
+     */
+    public void setNormalizedKeys(final boolean normalizedKeys)
+    {
+        this.normalizedKeys = normalizedKeys;
+        this.tieBreaker = null;
+    }
+
+    public boolean isNormalizedKeys()
+    {
+        return normalizedKeys;
+    }
+
+    /**
+     * Enables parallel sorting. Collections with at least <code>threshold</code> elements are sorted with a
+     * parallel merge sort that runs <code>parallelism</code> tasks on the given executor. The result is the
+     * same as the one of the sequential sort, including the order of equal elements.
+     *
+     * @param executor The executor to run the sort tasks on. Null disables parallel sorting.
+     * @param parallelism The number of tasks to split a sort into, usually the number of threads of the executor.
+     * @param threshold The minimum number of elements for a parallel sort.
+     */
+    public void setParallel(final ExecutorService executor, final int parallelism, final int threshold)
+    {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1!");
+        }
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.parallelThreshold = threshold;
     }
 
     /**
@@ -86,6 +184,44 @@ public class Sorter<T>
         return true;
     }
 
+    /**
+     * Returns the longest prefix of criterias that can be sorted 'cheap'. In hybrid mode, the database should sort
+     * by these criterias even if the sorter is not cheap; the sorter then only sorts within runs of elements that
+     * are equal on the prefix.
+     *
+     * @return The leading cheap criterias. Empty if the first criteria is expensive or the whole sorter is expensive.
+     */
+    public List<SortCriteria<T>> getCheapPrefix()
+    {
+        if (sorterCost == SorterCost.EXPENSIVE) {
+            return Collections.emptyList();
+        }
+
+        int prefixLength = 0;
+        while (prefixLength < criterias.size() && !criterias.get(prefixLength).isExpensive()) {
+            prefixLength++;
+        }
+        return Collections.unmodifiableList(criterias.subList(0, prefixLength));
+    }
+
+    /**
+     * Enables the hybrid sort. The elements passed to the sorter must already be sorted by the criterias returned by
+     * {@link #getCheapPrefix()} (usually by the database). The sorter then only sorts the runs of elements that are
+     * equal on the prefix by the remaining criterias. As these runs are usually small, this is close to linear.
+     *
+     * @param hybrid True if the elements come pre-sorted by the cheap prefix.
+     */
+    public void setHybrid(final boolean hybrid)
+    {
+        this.hybrid = hybrid;
+        this.tieBreaker = null;
+    }
+
+    public boolean isHybrid()
+    {
+        return hybrid;
+    }
+
     public boolean isSort()
     {
         return isCheap() && criterias.size() > 0;
@@ -101,9 +237,11 @@ public class Sorter<T>
         if (isCheap()) {
             return elements;
         }
+        else if (isHybridSort()) {
+            return sortHybrid(elements, null);
+        }
         else {
-            final Ordering<T> orderer = getOrderer(criterias);
-            return orderer.sortedCopy(elements);
+            return sortAll(elements);
         }
     }
 
@@ -112,20 +250,358 @@ public class Sorter<T>
         if (isCheap()) {
             return elements;
         }
+        else if (isHybridSort()) {
+            return sortHybrid(elements, null);
+        }
         else {
-            final Ordering<T> orderer = getOrderer(criterias);
-            return orderer.sortedCopy(elements);
+            return sortAll(elements);
         }
     }
 
-    private Ordering<T> getOrderer(final List<SortCriteria<T>> criterias) {
-        return Ordering.compound(Lists.transform(criterias, new Function<SortCriteria<T>, Ordering<T>>() {
+    /**
+     * Merges a number of element streams that are each already sorted by the criterias of this sorter, e.g.
+     * the results of several shards that sorted in the database. The merge is streaming and costs O(n log k)
+     * for k streams. Equal elements are returned in the order of their streams.
+     *
+     * @param sortedElements The sorted element streams.
+     * @return An iterable that returns all elements in sort order.
+     */
+    public Iterable<T> merge(final List<? extends Iterable<T>> sortedElements)
+    {
+        return new Iterable<T>() {
             @Override
-            public Ordering<T> apply(final SortCriteria<T> criteria)
+            public Iterator<T> iterator()
             {
-                final Ordering<T> orderer = criteria.getOrdering();
-                return criteria.isDescending() ? orderer.reverse() : orderer;
+                final List<Iterator<T>> iterators = Lists.newArrayListWithCapacity(sortedElements.size());
+                for (Iterable<T> elements : sortedElements) {
+                    iterators.add(elements.iterator());
+                }
+                return new MergingIterator<T>(iterators, orderer);
             }
-        }));
+        };
+    }
+
+    /**
+     * Returns a lazily sorted view of the elements. Nothing is sorted up front; every iterator heapifies the
+     * elements in linear time and then returns the next element on demand. Consumers that stop after the
+     * first few elements (e.g. a pager) therefore only pay for what they actually read.
+     *
+     * @param elements The elements to sort.
+     * @return An iterable that returns the elements in sort order.
+     */
+    public Iterable<T> sortLazily(final Iterable<T> elements)
+    {
+        if (isCheap()) {
+            return elements;
+        }
+        return new LazySortedIterable<T>(elements, orderer);
+    }
+
+    /**
+     * Sorts the elements, but only as far as the given pager will look at them. If the pager
+     * pages in memory and has a fixed window, only the first <code>start + size</code> elements
+     * are selected and sorted; everything behind the window is dropped. The pager still needs
+     * to be applied to the result to skip the first <code>start</code> elements.
+     *
+     * @param elements The elements to sort.
+     * @param pager The pager that will be applied to the sorted elements.
+     * @return The sorted elements, possibly truncated after the last element of the pager window.
+     */
+    public Collection<T> sort(final Collection<T> elements, final Pager<T> pager)
+    {
+        if (isCheap()) {
+            return elements;
+        }
+
+        final Integer limit = getLimit(pager);
+        if (limit == null || limit >= elements.size()) {
+            return sort(elements);
+        }
+        return isHybridSort() ? sortHybrid(elements, limit) : sortTop(elements, limit);
+    }
+
+    public Iterable<T> sort(final Iterable<T> elements, final Pager<T> pager)
+    {
+        if (isCheap()) {
+            return elements;
+        }
+
+        final Integer limit = getLimit(pager);
+        if (limit == null) {
+            return sort(elements);
+        }
+        return isHybridSort() ? sortHybrid(elements, limit) : sortTop(elements, limit);
+    }
+
+    /**
+     * Sorts and pages the elements in one step and returns only the elements of the pager window. Pages in the
+     * first half of the elements are selected with a top-k selection of <code>start + size</code> elements. Pages
+     * in the second half are selected from the end: the last <code>total - start</code> elements are selected in
+     * reverse order and flipped, so that the last page is as cheap as the first one.
+     *
+     * @param elements The elements to sort and page.
+     * @param pager The pager whose window should be returned.
+     * @return A list of the elements of the pager window in sort order.
+     */
+    public List<T> sortPage(final Collection<T> elements, final Pager<T> pager)
+    {
+        final Integer limit = getLimit(pager);
+        if (isCheap() || limit == null || isHybridSort()) {
+            return Lists.newArrayList(pager.page(sort(elements, pager)));
+        }
+
+        final int total = elements.size();
+        final int start = pager.getStart();
+        if (start >= total) {
+            return Collections.emptyList();
+        }
+        if (start <= total / 2) {
+            final List<T> head = sortTop(elements, limit);
+            return head.subList(Math.min(start, head.size()), head.size());
+        }
+
+        // Select the tail backwards; offering the elements in reverse keeps equal elements in the order of a stable sort.
+        final List<T> list = (elements instanceof List) ? (List<T>) elements : Lists.newArrayList(elements);
+        final TopSelector<T> selector = new TopSelector<T>(orderer.reverse(), total - start);
+        for (ListIterator<T> it = list.listIterator(total); it.hasPrevious();) {
+            selector.offer(it.previous());
+        }
+
+        final List<T> tail = selector.toSortedList();
+        Collections.reverse(tail);
+        return tail.subList(0, Math.min(pager.getSize(), tail.size()));
+    }
+
+    /**
+     * Sorts a stream that may not fit into memory. The elements are sorted in runs of at most
+     * <code>maxElementsInMemory</code> elements, which are spilled to temporary files and merged lazily.
+     * The result must be closed to delete the temporary files, so keep a reference to it instead of only
+     * passing it on to e.g. a pager.
+     *
+     * At most {@link ExternalSort#DEFAULT_MAX_FAN_IN} runs are merged at once. If more runs are spilled, they are
+     * merged into longer runs in additional passes first, each of which reads and writes all elements once more.
+     *
+     * @param elements The elements to sort.
+     * @param codec Writes and reads the elements of the spilled runs.
+     * @param maxElementsInMemory The maximum number of elements to sort in memory at once.
+     * @param tempDirectory The directory for the spilled runs. If null, the default temporary directory is used.
+     * @return The sorted elements, to be closed after use.
+     */
+    public ExternalSort.SpilledRuns<T> sortExternal(final Iterable<T> elements, final ElementCodec<T> codec, final int maxElementsInMemory, final File tempDirectory)
+    {
+        final ExternalSort<T> externalSort = new ExternalSort<T>(orderer, new Function<List<T>, List<T>>() {
+            @Override
+            public List<T> apply(final List<T> run)
+            {
+                return sortAll(run);
+            }
+        }, codec, maxElementsInMemory, tempDirectory);
+
+        return externalSort.sort(elements);
+    }
+
+    /**
+     * Returns the first <code>limit</code> elements in sort order. This runs in O(n log limit) and
+     * keeps only <code>limit</code> elements in memory. Equal elements keep their relative order.
+     *
+     * @param elements The elements to sort.
+     * @param limit The maximum number of elements to return.
+     * @return A sorted list with at most <code>limit</code> elements.
+     */
+    public List<T> sortTop(final Iterable<T> elements, final int limit)
+    {
+        final TopSelector<T> selector = new TopSelector<T>(orderer, limit);
+        selector.offerAll(elements);
+        return selector.toSortedList();
+    }
+
+    /**
+     * Returns the first <code>limit</code> elements of every group in sort order, e.g. the latest five items per
+     * category. The elements are read in a single pass and only <code>limit</code> elements per group are kept.
+     * If the sorter is cheap, the elements are already in sort order and the first ones of every group are kept.
+     *
+     * @param elements The elements to select from.
+     * @param groupAdapter Returns the group of an element.
+     * @param limit The maximum number of elements per group.
+     * @return The selected elements per group, the groups in the order in which they first appeared.
+     */
+    public <K> Map<K, List<T>> selectTopPerGroup(final Iterable<T> elements, final Adapter<T, K> groupAdapter, final int limit)
+    {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative!");
+        }
+        if (isCheap()) {
+            final Map<K, List<T>> groups = Maps.newLinkedHashMap();
+            for (T element : elements) {
+                final K group = getGroup(element, groupAdapter);
+                List<T> groupElements = groups.get(group);
+                if (groupElements == null) {
+                    groupElements = Lists.newArrayList();
+                    groups.put(group, groupElements);
+                }
+                if (groupElements.size() < limit) {
+                    groupElements.add(element);
+                }
+            }
+            return groups;
+        }
+
+        final GroupedTopSelector<T, K> selector = new GroupedTopSelector<T, K>(orderer, groupAdapter, limit);
+        selector.offerAll(elements);
+        return selector.toGroups();
+    }
+
+    /**
+     * Returns the first <code>limit</code> elements of every group, all in a single list in sort order. The result can
+     * be paged with a {@link Pager} to page through e.g. the latest five items of all categories. If the sorter is
+     * cheap, the elements are already in sort order and the first ones of every group are kept in their order.
+     *
+     * @param elements The elements to select from.
+     * @param groupAdapter Returns the group of an element.
+     * @param limit The maximum number of elements per group.
+     * @return The selected elements of all groups in sort order.
+     */
+    public <K> List<T> sortTopPerGroup(final Iterable<T> elements, final Adapter<T, K> groupAdapter, final int limit)
+    {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative!");
+        }
+        if (isCheap()) {
+            final Map<K, Integer> counts = Maps.newHashMap();
+            final List<T> result = Lists.newArrayList();
+            for (T element : elements) {
+                final K group = getGroup(element, groupAdapter);
+                final int count = counts.containsKey(group) ? counts.get(group) : 0;
+                if (count < limit) {
+                    counts.put(group, count + 1);
+                    result.add(element);
+                }
+            }
+            return result;
+        }
+
+        final GroupedTopSelector<T, K> selector = new GroupedTopSelector<T, K>(orderer, groupAdapter, limit);
+        selector.offerAll(elements);
+        return selector.toSortedList();
+    }
+
+    private <K> K getGroup(final T element, final Adapter<T, K> groupAdapter)
+    {
+        // Null elements have no group key, they form their own group.
+        return (element == null) ? null : groupAdapter.getValue(element);
+    }
+
+    private List<T> sortAll(final Iterable<T> elements)
+    {
+        if (normalizedKeys && NormalizedKeyTable.isSupported(criterias)) {
+            final NormalizedKeyTable<T> keyTable = new NormalizedKeyTable<T>(criterias, elements);
+            return keyTable.toList(isParallel(keyTable.size()) ? keyTable.sort(executor, parallelism) : keyTable.sort());
+        }
+
+        // Primitive and derived keys are always sorted on extracted keys, there is no point in comparing boxed values
+        // or deriving the same key over and over again.
+        if (SortKeyTable.isPrecomputed(criterias) || (keyCaching && SortKeyTable.isSupported(criterias))) {
+            final SortKeyTable<T> keyTable = new SortKeyTable<T>(criterias, elements);
+            return keyTable.toList(isParallel(keyTable.size()) ? keyTable.sort(executor, parallelism) : keyTable.sort());
+        }
+
+        if (executor != null) {
+            final List<T> list = (elements instanceof List) ? (List<T>) elements : Lists.newArrayList(elements);
+            return isParallel(list.size()) ? sortParallel(list) : orderer.sortedCopy(list);
+        }
+        return orderer.sortedCopy(elements);
+    }
+
+    private boolean isHybridSort()
+    {
+        return hybrid && !getCheapPrefix().isEmpty();
+    }
+
+    /**
+     * Sorts elements that are already sorted by the cheap prefix. Only the runs of elements with equal prefix keys
+     * are sorted, by the remaining criterias. If a limit is given, no runs are sorted once the limit is reached.
+     */
+    private List<T> sortHybrid(final Iterable<T> elements, final Integer limit)
+    {
+        final Sorter<T> tieBreaker = getTieBreaker();
+        final List<T> result = Lists.newArrayList();
+        final List<T> run = Lists.newArrayList();
+
+        for (T element : elements) {
+            if (!run.isEmpty() && prefixOrderer.compare(run.get(0), element) != 0) {
+                addRun(result, run, tieBreaker);
+                if (limit != null && result.size() >= limit) {
+                    return result.subList(0, limit);
+                }
+            }
+            run.add(element);
+        }
+        addRun(result, run, tieBreaker);
+
+        return (limit != null && result.size() > limit) ? result.subList(0, limit) : result;
+    }
+
+    /**
+     * Returns the sorter for the runs of the hybrid sort, which sorts by the criterias behind the cheap prefix. It is
+     * built on first use and dropped whenever the criterias or the settings change.
+     */
+    private Sorter<T> getTieBreaker()
+    {
+        if (tieBreaker == null) {
+            tieBreaker = new Sorter<T>(null, null, SorterCost.EXPENSIVE);
+            for (SortCriteria<T> criteria : criterias.subList(getCheapPrefix().size(), criterias.size())) {
+                tieBreaker.add(criteria);
+            }
+            tieBreaker.setKeyCaching(keyCaching);
+            tieBreaker.setNormalizedKeys(normalizedKeys);
+        }
+        return tieBreaker;
+    }
+
+    private void addRun(final List<T> result, final List<T> run, final Sorter<T> tieBreaker)
+    {
+        if (run.size() > 1) {
+            result.addAll(tieBreaker.sort(run));
+        }
+        else {
+            result.addAll(run);
+        }
+        run.clear();
+    }
+
+    private boolean isParallel(final int size)
+    {
+        return executor != null && size >= parallelThreshold;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<T> sortParallel(final List<T> elements)
+    {
+        final Object[] array = elements.toArray();
+
+        final int[] indexes = IndexSort.identity(array.length);
+        ParallelSort.sort(indexes, new IndexComparator() {
+            @Override
+            public int compare(final int left, final int right)
+            {
+                return orderer.compare((T) array[left], (T) array[right]);
+            }
+        }, executor, parallelism);
+
+        final List<T> result = new ArrayList<T>(array.length);
+        for (int index : indexes) {
+            result.add((T) array[index]);
+        }
+        return result;
+    }
+
+    private Integer getLimit(final Pager<T> pager)
+    {
+        // Only an in-memory pager with a fixed window lets us drop elements.
+        if (pager == null || pager.getCost() != Pager.PagerCost.EXPENSIVE || pager.getStart() == null || pager.getSize() == null) {
+            return null;
+        }
+        // A window like "everything from start on" must not overflow.
+        return (int) Math.min((long) pager.getStart() + pager.getSize(), Integer.MAX_VALUE);
     }
 }
@@ -0,0 +1,168 @@
+package com.ning.fsp.filtering;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import com.google.common.base.Predicate;
+
+/**
+ * Evaluates the fields of a {@link CompiledPredicate} in an order that adapts to the data. Every
+ * few elements, all fields are evaluated and timed to sample how often each field rejects an element
+ * and how long it takes. The fields are then reordered so that the fields with the most rejections
+ * per nanosecond run first.
+ *
+ * The fields are ANDed, so the order never changes the result, only the cost of reaching it.
+ *
+ * @param <T> The element type to filter.
+ */
+public class AdaptivePredicate<T> implements Predicate<T> {
+
+    /** By default every 16th element is sampled. */
+    public static final int DEFAULT_SAMPLE_INTERVAL = 16;
+
+    /** By default the fields are reordered after 64 samples. */
+    public static final int DEFAULT_REORDER_INTERVAL = 64;
+
+    private final CompiledPredicate<T> predicate;
+    private final int sampleInterval;
+    private final int reorderInterval;
+
+    // Statistics per field, guarded by this.
+    private final long[] rejections;
+    private final long[] nanos;
+    private int samples = 0;
+
+    // Replaced as a whole, so that concurrent readers always see a complete order.
+    private volatile int[] order;
+
+    // Only used to decide when to sample, so lost updates from concurrent callers do no harm. Callers on
+    // many threads should still use their own fork(), or they all keep writing the same cache line.
+    private int count = 0;
+
+    public AdaptivePredicate(final CompiledPredicate<T> predicate) {
+        this(predicate, DEFAULT_SAMPLE_INTERVAL, DEFAULT_REORDER_INTERVAL);
+    }
+
+    public AdaptivePredicate(final CompiledPredicate<T> predicate, final int sampleInterval, final int reorderInterval) {
+        if (sampleInterval < 1 || reorderInterval < 1) {
+            throw new IllegalArgumentException("sample and reorder intervals must be positive!");
+        }
+
+        this.predicate = predicate;
+        this.sampleInterval = sampleInterval;
+        this.reorderInterval = reorderInterval;
+
+        final int fieldCount = predicate.getFieldCount();
+        this.rejections = new long[fieldCount];
+        this.nanos = new long[fieldCount];
+
+        final int[] initialOrder = new int[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            initialOrder[i] = i;
+        }
+        this.order = initialOrder;
+    }
+
+    @Override
+    public boolean apply(final T element) {
+        return evaluate(element, ++count);
+    }
+
+    /**
+     * Returns a predicate that shares the field order and statistics of this one, but counts its elements
+     * on its own. Meant for a single thread, e.g. one task of a parallel filter.
+     */
+    public Predicate<T> fork() {
+        return new Predicate<T>() {
+            private int count = 0;
+
+            @Override
+            public boolean apply(final T element) {
+                return evaluate(element, ++count);
+            }
+        };
+    }
+
+    /**
+     * Returns the current evaluation order of the fields.
+     */
+    public int[] getOrder() {
+        return order.clone();
+    }
+
+    private boolean evaluate(final T element, final int elementCount) {
+        if (elementCount % sampleInterval == 0) {
+            return sample(element);
+        }
+
+        final int[] fields = order;
+        for (int i = 0; i < fields.length; i++) {
+            if (!predicate.applyField(fields[i], element)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Evaluates all fields without short-circuiting, so that every field is measured on the same elements.
+     */
+    private boolean sample(final T element) {
+        final int fieldCount = predicate.getFieldCount();
+        final boolean[] results = new boolean[fieldCount];
+        final long[] times = new long[fieldCount];
+
+        boolean result = true;
+        for (int field = 0; field < fieldCount; field++) {
+            final long start = System.nanoTime();
+            results[field] = predicate.applyField(field, element);
+            times[field] = System.nanoTime() - start;
+            result &= results[field];
+        }
+
+        record(results, times);
+        return result;
+    }
+
+    private synchronized void record(final boolean[] results, final long[] times) {
+        for (int field = 0; field < results.length; field++) {
+            if (!results[field]) {
+                rejections[field]++;
+            }
+            nanos[field] += times[field];
+        }
+
+        if (++samples >= reorderInterval) {
+            reorder();
+            samples = 0;
+        }
+    }
+
+    private void reorder() {
+        final double[] ranks = new double[rejections.length];
+        final Integer[] fields = new Integer[rejections.length];
+        for (int field = 0; field < rejections.length; field++) {
+            // Add one to avoid dividing by zero for fields that are faster than the timer resolution.
+            ranks[field] = rejections[field] / (double) (nanos[field] + 1);
+            fields[field] = field;
+
+            // Decay the statistics so that the order follows changes in the data.
+            rejections[field] /= 2;
+            nanos[field] /= 2;
+        }
+
+        // Stable, so fields of equal rank keep their original order.
+        Arrays.sort(fields, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer left, final Integer right) {
+                return Double.compare(ranks[right], ranks[left]);
+            }
+        });
+
+        final int[] newOrder = new int[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            newOrder[i] = fields[i];
+        }
+        order = newOrder;
+    }
+}
@@ -0,0 +1,30 @@
+package com.ning.fsp.filtering;
+
+import java.util.Collection;
+
+import com.google.common.base.Predicate;
+
+/**
+ * A filter criteria that can be combined with other criterias of the same kind on a field. Repeating
+ * a field with several values creates one criteria per value; these can be evaluated together (e.g.
+ * as a single set lookup) instead of testing every value in turn.
+ *
+ * @param <T> The element type to filter.
+ */
+public interface CombinableFilterCriteria<T> extends FilterCriteria<T>
+{
+    /**
+     * Returns a key for the kind of match this criteria does, or null if it can not be combined with other criterias.
+     * Criterias with equal keys can be combined with {@link #getCombinedPredicate(Collection, Collection)}.
+     */
+    Object getCombineKey();
+
+    /**
+     * Returns a predicate that matches an element if any of the include matches would match it (or there are none)
+     * and none of the exclude matches would match it.
+     *
+     * @param includeMatches The matches ({@link #getMatch()}) of including criterias with the same key as this criteria.
+     * @param excludeMatches The matches of excluding criterias with the same key as this criteria.
+     */
+    Predicate<T> getCombinedPredicate(Collection<Object> includeMatches, Collection<Object> excludeMatches);
+}
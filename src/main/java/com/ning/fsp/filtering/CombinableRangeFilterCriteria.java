@@ -0,0 +1,8 @@
+package com.ning.fsp.filtering;
+
+/**
+ * Criterias of the numeric and date factories, which can be combined as exact matches and looked up as ranges.
+ */
+interface CombinableRangeFilterCriteria<T> extends CombinableFilterCriteria<T>, RangeFilterCriteria<T>
+{
+}
@@ -0,0 +1,105 @@
+package com.ning.fsp.filtering;
+
+import java.util.Collection;
+import java.util.List;
+
+import com.google.common.base.Predicate;
+import com.ning.fsp.Filter.FilterCriteriaCollector;
+
+/**
+ * A flat evaluator for the expensive filters of a {@link com.ning.fsp.Filter}. Instead of a tree of
+ * nested and / or / not predicates, all leaf predicates are kept in a single array, and every
+ * field is a range of include leaves followed by a range of exclude leaves:
+ *
+ * <ul>
+ *   <li>an element passes a field if any include leaf matches (or there are none) and no exclude leaf matches,</li>
+ *   <li>an element passes the filter if it passes all fields.</li>
+ * </ul>
+ *
+ * Evaluation short-circuits on the first deciding leaf.
+ *
+ * @param <T> The element type to filter.
+ */
+public class CompiledPredicate<T> implements Predicate<T> {
+    private final Predicate<T>[] leaves;
+
+    // For field i, leaves [includeStarts[i], excludeStarts[i]) are includes and [excludeStarts[i], ends[i]) are excludes.
+    private final int[] includeStarts;
+    private final int[] excludeStarts;
+    private final int[] ends;
+
+    @SuppressWarnings("unchecked")
+    public CompiledPredicate(final Collection<FilterCriteriaCollector<T>> collectors) {
+        int leafCount = 0;
+        for (FilterCriteriaCollector<T> collector : collectors) {
+            leafCount += collector.getIncludePredicates().size() + collector.getExcludePredicates().size();
+        }
+
+        this.leaves = (Predicate<T>[]) new Predicate<?>[leafCount];
+        this.includeStarts = new int[collectors.size()];
+        this.excludeStarts = new int[collectors.size()];
+        this.ends = new int[collectors.size()];
+
+        int field = 0;
+        int leaf = 0;
+        for (FilterCriteriaCollector<T> collector : collectors) {
+            includeStarts[field] = leaf;
+            leaf = addLeaves(collector.getIncludePredicates(), leaf);
+            excludeStarts[field] = leaf;
+            leaf = addLeaves(collector.getExcludePredicates(), leaf);
+            ends[field] = leaf;
+            field++;
+        }
+    }
+
+    private int addLeaves(final List<Predicate<T>> predicates, int leaf) {
+        for (Predicate<T> predicate : predicates) {
+            leaves[leaf++] = predicate;
+        }
+        return leaf;
+    }
+
+    @Override
+    public boolean apply(final T element) {
+        for (int field = 0; field < ends.length; field++) {
+            if (!applyField(field, element)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of fields, i.e. the number of terms of the AND chain.
+     */
+    public int getFieldCount() {
+        return ends.length;
+    }
+
+    /**
+     * Evaluates a single field against an element.
+     */
+    public boolean applyField(final int field, final T element) {
+        final int excludeStart = excludeStarts[field];
+
+        if (includeStarts[field] < excludeStart) {
+            boolean included = false;
+            for (int i = includeStarts[field]; i < excludeStart; i++) {
+                if (leaves[i].apply(element)) {
+                    included = true;
+                    break;
+                }
+            }
+            if (!included) {
+                return false;
+            }
+        }
+
+        for (int i = excludeStart; i < ends[field]; i++) {
+            if (leaves[i].apply(element)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
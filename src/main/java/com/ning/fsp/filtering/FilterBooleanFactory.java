@@ -1,9 +1,16 @@
 package com.ning.fsp.filtering;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.apache.commons.lang.BooleanUtils;
 
+import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.ning.fsp.FilterParameter;
+import com.ning.fsp.filtering.index.BitmapIndex;
+import com.ning.fsp.filtering.index.FilterIndex;
+import com.ning.fsp.filtering.index.IndexedDataset;
 import com.ning.fsp.util.Adapter;
 
 
@@ -34,7 +41,7 @@ public class FilterBooleanFactory<T> implements FilterCriteriaFactory<T> {
 
         final Boolean match = parseNullableBoolean(filterParameter.getFieldMatch());
 
-        return new FilterCriteria<T>() {
+        return new CombinableFilterCriteria<T>() {
 
             @Override
             public String getColumnName() {
@@ -70,6 +77,31 @@ public class FilterBooleanFactory<T> implements FilterCriteriaFactory<T> {
                 };
             }
 
+            @Override
+            public Object getCombineKey() {
+                return FilterBooleanFactory.this;
+            }
+
+            @Override
+            public Predicate<T> getCombinedPredicate(final Collection<Object> includeMatches, final Collection<Object> excludeMatches) {
+                final boolean including = !includeMatches.isEmpty();
+                final boolean includesTrue = !including || includeMatches.contains(Boolean.TRUE);
+                final boolean includesFalse = !including || includeMatches.contains(Boolean.FALSE);
+                final boolean excludesTrue = excludeMatches.contains(Boolean.TRUE);
+                final boolean excludesFalse = excludeMatches.contains(Boolean.FALSE);
+
+                return new Predicate<T>() {
+                    @Override
+                    public boolean apply(final T type) {
+                        final Boolean value = booleanAdapter.getValue(type);
+                        if (value == null) {
+                            return !including;
+                        }
+                        return value ? (includesTrue && !excludesTrue) : (includesFalse && !excludesFalse);
+                    }
+                };
+            }
+
             @Override
             public String toString() {
                 return String.format("BooleanFilterCriteria(match=%b, columnName=%s, including=%b)", match, columnName, isIncluding());
@@ -87,6 +119,20 @@ public class FilterBooleanFactory<T> implements FilterCriteriaFactory<T> {
         };
     }
 
+    /**
+     * Creates a bitmap index over the values of this factory, to register with an {@link IndexedDataset}. This
+     * pays off for fields with few distinct values.
+     */
+    public FilterIndex<T> createBitmapIndex(final List<T> elements) {
+
+        return new BitmapIndex<T>(elements, new Function<T, Boolean>() {
+            @Override
+            public Boolean apply(final T element) {
+                return booleanAdapter.getValue(element);
+            }
+        });
+    }
+
     private Boolean parseNullableBoolean(final String value) {
 
         if (value == null)  {
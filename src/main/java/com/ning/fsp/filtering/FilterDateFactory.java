@@ -0,0 +1,200 @@
+package com.ning.fsp.filtering;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.lang.math.LongRange;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.ning.fsp.FilterParameter;
+import com.ning.fsp.filtering.index.FilterIndex;
+import com.ning.fsp.filtering.index.IndexedDataset;
+import com.ning.fsp.filtering.index.SortedKeyIndex;
+import com.ning.fsp.util.Adapter;
+import com.ning.fsp.util.LongHashSet;
+
+/**
+ * Factory returning criterias to match {@link DateTime} values. Dates are matched by their instant and are
+ * written as ISO 8601 dates or as milliseconds since the epoch. A value that is a valid ISO date is read as one,
+ * so short numbers are years; milliseconds only apply to numbers that are too long for a year. ISO dates without
+ * a zone are read as UTC, so that the results do not depend on the zone of the server. A match is either a single value or a range
+ * (see {@link FilterRanges}).
+ *
+ * @param <T> Type of the filtered objects.
+ */
+public class FilterDateFactory<T> implements FilterCriteriaFactory<T> {
+
+    private static final DateTimeFormatter DATE_PARSER = ISODateTimeFormat.dateTimeParser().withZone(DateTimeZone.UTC);
+
+    private final boolean expensive;
+    private final String columnName;
+    private final Adapter<T, DateTime> dateAdapter;
+
+    private final Function<String, Long> valueParser = new Function<String, Long>() {
+        @Override
+        public Long apply(final String value) {
+            final DateTime parsed = parseNullableDate(value);
+            return (parsed == null) ? null : parsed.getMillis();
+        }
+    };
+
+    /**
+     * Factory that only returns 'expensive' filter criterias.
+     */
+    public FilterDateFactory(final Adapter<T, DateTime> dateAdapter) {
+        this.expensive = true;
+        this.columnName = null;
+        this.dateAdapter = dateAdapter;
+    }
+
+    /**
+     * Factory that returns filters that can be run 'cheap' or 'expensive'.
+     */
+    public FilterDateFactory(final String columnName, final Adapter<T, DateTime> dateAdapter) {
+        this.expensive = false;
+        this.columnName = columnName;
+        this.dateAdapter = dateAdapter;
+    }
+
+    public FilterCriteria<T> getCriteria(final FilterParameter filterParameter) {
+
+        final boolean isRange = FilterRanges.isRange(filterParameter.getFieldMatch());
+        final DateTime match = isRange ? null : parseNullableDate(filterParameter.getFieldMatch());
+        final LongRange range = isRange ? FilterRanges.parse(filterParameter.getFieldMatch(), valueParser) : (match == null ? null : new LongRange(match.getMillis(), match.getMillis()));
+
+        return new CombinableRangeFilterCriteria<T>() {
+
+            @Override
+            public String getColumnName() {
+                return columnName;
+            }
+
+            @Override
+            public boolean isExpensive() {
+                return expensive;
+            }
+
+            @Override
+            public Object getMatch() {
+                // Ranges have no single match, they are only available through getRange().
+                return match;
+            }
+
+            @Override
+            public boolean isIncluding() {
+                return filterParameter.isIncluding();
+            }
+
+            @Override
+            public Predicate<T> getPredicate() {
+                return new Predicate<T>() {
+                    @Override
+                    public boolean apply(final T type) {
+                        final DateTime value = dateAdapter.getValue(type);
+                        if (range == null || value == null) {
+                            return false;
+                        }
+
+                        return range.containsLong(value.getMillis());
+                    }
+                };
+            }
+
+            @Override
+            public Object getCombineKey() {
+                return isRange ? null : FilterDateFactory.this;
+            }
+
+            @Override
+            public LongRange getRange() {
+                return range;
+            }
+
+            @Override
+            public Predicate<T> getCombinedPredicate(final Collection<Object> includeMatches, final Collection<Object> excludeMatches) {
+                final boolean including = !includeMatches.isEmpty();
+                final LongHashSet includes = toSet(includeMatches);
+                final LongHashSet excludes = toSet(excludeMatches);
+
+                return new Predicate<T>() {
+                    @Override
+                    public boolean apply(final T type) {
+                        final DateTime value = dateAdapter.getValue(type);
+                        if (value == null) {
+                            return !including;
+                        }
+                        return (!including || includes.contains(value.getMillis())) && !excludes.contains(value.getMillis());
+                    }
+                };
+            }
+
+            @Override
+            public String toString() {
+                return String.format("DateFilterCriteria(match=%s, columnName=%s, including=%b)", isRange ? range : match, columnName, isIncluding());
+            }
+
+            @Override
+            public boolean equals(final Object o) {
+                return this == o;
+            }
+
+            @Override
+            public int hashCode() {
+                return System.identityHashCode(this);
+            }
+        };
+    }
+
+    /**
+     * Creates an index over the values of this factory, to register with an {@link IndexedDataset}.
+     */
+    public FilterIndex<T> createIndex(final List<T> elements) {
+
+        return new SortedKeyIndex<T>(elements, new Function<T, Long>() {
+            @Override
+            public Long apply(final T element) {
+                final DateTime value = dateAdapter.getValue(element);
+                return (value == null) ? null : value.getMillis();
+            }
+        });
+    }
+
+    private LongHashSet toSet(final Collection<Object> matches) {
+
+        final LongHashSet values = new LongHashSet(matches.size());
+        for (Object match : matches) {
+            // Matches that did not parse never match anything.
+            if (match != null) {
+                values.add(((DateTime) match).getMillis());
+            }
+        }
+        return values;
+    }
+
+    private DateTime parseNullableDate(final String value) {
+
+        if (value == null) {
+            return null;
+        }
+
+        // ISO first, so that a year like "2010" is not read as milliseconds.
+        try {
+            return DATE_PARSER.parseDateTime(value);
+        }
+        catch (IllegalArgumentException iae) {
+            // Not an ISO date, try milliseconds.
+        }
+
+        try {
+            return new DateTime(Long.parseLong(value));
+        }
+        catch (NumberFormatException nfe) {
+            return null;
+        }
+    }
+}
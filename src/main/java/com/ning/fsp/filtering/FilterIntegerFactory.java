@@ -1,11 +1,23 @@
 package com.ning.fsp.filtering;
 
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.lang.math.LongRange;
+
+import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.ning.fsp.FilterParameter;
+import com.ning.fsp.filtering.index.BitmapIndex;
+import com.ning.fsp.filtering.index.FilterIndex;
+import com.ning.fsp.filtering.index.IndexedDataset;
+import com.ning.fsp.filtering.index.SortedKeyIndex;
 import com.ning.fsp.util.Adapter;
+import com.ning.fsp.util.LongHashSet;
 
 /**
- * Factory returning criterias to match integer values.
+ * Factory returning criterias to match integer values. A match is either a single value or a range
+ * (see {@link FilterRanges}).
  *
  * @param <T> Type of the filtered objects.
  */
@@ -15,6 +27,14 @@ public class FilterIntegerFactory<T> implements FilterCriteriaFactory<T> {
     private final String columnName;
     private final Adapter<T, Integer> integerAdapter;
 
+    private final Function<String, Long> valueParser = new Function<String, Long>() {
+        @Override
+        public Long apply(final String value) {
+            final Integer parsed = parseNullableInteger(value);
+            return (parsed == null) ? null : parsed.longValue();
+        }
+    };
+
     /**
      * Factory that only returns 'expensive' filter criterias.
      */
@@ -35,9 +55,11 @@ public class FilterIntegerFactory<T> implements FilterCriteriaFactory<T> {
 
     public FilterCriteria<T> getCriteria(final FilterParameter filterParameter) {
 
-        final Integer match = parseNullableInteger(filterParameter.getFieldMatch());
+        final boolean isRange = FilterRanges.isRange(filterParameter.getFieldMatch());
+        final Integer match = isRange ? null : parseNullableInteger(filterParameter.getFieldMatch());
+        final LongRange range = isRange ? FilterRanges.parse(filterParameter.getFieldMatch(), valueParser) : (match == null ? null : new LongRange(match, match));
 
-        return new FilterCriteria<T>() {
+        return new CombinableRangeFilterCriteria<T>() {
 
             @Override
             public String getColumnName() {
@@ -51,6 +73,7 @@ public class FilterIntegerFactory<T> implements FilterCriteriaFactory<T> {
 
             @Override
             public Object getMatch() {
+                // Ranges have no single match, they are only available through getRange().
                 return match;
             }
 
@@ -65,18 +88,46 @@ public class FilterIntegerFactory<T> implements FilterCriteriaFactory<T> {
                     @Override
                     public boolean apply(final T type) {
                         final Integer value = integerAdapter.getValue(type);
-                        if (match == null || value == null) {
+                        if (range == null || value == null) {
                             return false;
                         }
 
-                        return value.equals(match);
+                        return range.containsLong(value);
+                    }
+                };
+            }
+
+            @Override
+            public Object getCombineKey() {
+                return isRange ? null : FilterIntegerFactory.this;
+            }
+
+            @Override
+            public LongRange getRange() {
+                return range;
+            }
+
+            @Override
+            public Predicate<T> getCombinedPredicate(final Collection<Object> includeMatches, final Collection<Object> excludeMatches) {
+                final boolean including = !includeMatches.isEmpty();
+                final LongHashSet includes = toSet(includeMatches);
+                final LongHashSet excludes = toSet(excludeMatches);
+
+                return new Predicate<T>() {
+                    @Override
+                    public boolean apply(final T type) {
+                        final Integer value = integerAdapter.getValue(type);
+                        if (value == null) {
+                            return !including;
+                        }
+                        return (!including || includes.contains(value)) && !excludes.contains(value);
                     }
                 };
             }
 
             @Override
             public String toString() {
-                return String.format("IntegerFilterCriteria(match=%d, columnName=%s, including=%b)", match, columnName, isIncluding());
+                return String.format("IntegerFilterCriteria(match=%s, columnName=%s, including=%b)", isRange ? range : match, columnName, isIncluding());
             }
 
             @Override
@@ -91,6 +142,46 @@ public class FilterIntegerFactory<T> implements FilterCriteriaFactory<T> {
         };
     }
 
+    /**
+     * Creates an index over the values of this factory, to register with an {@link IndexedDataset}.
+     */
+    public FilterIndex<T> createIndex(final List<T> elements) {
+
+        return new SortedKeyIndex<T>(elements, new Function<T, Long>() {
+            @Override
+            public Long apply(final T element) {
+                final Integer value = integerAdapter.getValue(element);
+                return (value == null) ? null : value.longValue();
+            }
+        });
+    }
+
+    /**
+     * Creates a bitmap index over the values of this factory, to register with an {@link IndexedDataset}. This
+     * pays off for fields with few distinct values.
+     */
+    public FilterIndex<T> createBitmapIndex(final List<T> elements) {
+
+        return new BitmapIndex<T>(elements, new Function<T, Integer>() {
+            @Override
+            public Integer apply(final T element) {
+                return integerAdapter.getValue(element);
+            }
+        });
+    }
+
+    private LongHashSet toSet(final Collection<Object> matches) {
+
+        final LongHashSet values = new LongHashSet(matches.size());
+        for (Object match : matches) {
+            // Matches that did not parse never match anything.
+            if (match != null) {
+                values.add((Integer) match);
+            }
+        }
+        return values;
+    }
+
     private Integer parseNullableInteger(final String value) {
 
         try {
@@ -1,11 +1,22 @@
 package com.ning.fsp.filtering;
 
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.lang.math.LongRange;
+
+import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.ning.fsp.FilterParameter;
+import com.ning.fsp.filtering.index.FilterIndex;
+import com.ning.fsp.filtering.index.IndexedDataset;
+import com.ning.fsp.filtering.index.SortedKeyIndex;
 import com.ning.fsp.util.Adapter;
+import com.ning.fsp.util.LongHashSet;
 
 /**
- * Factory returning criterias to match long values.
+ * Factory returning criterias to match long values. A match is either a single value or a range
+ * (see {@link FilterRanges}).
  *
  * @param <T> Type of the filtered objects.
  */
@@ -15,6 +26,13 @@ public class FilterLongFactory<T> implements FilterCriteriaFactory<T> {
     private final String columnName;
     private final Adapter<T, Long> longAdapter;
 
+    private final Function<String, Long> valueParser = new Function<String, Long>() {
+        @Override
+        public Long apply(final String value) {
+            return parseNullableLong(value);
+        }
+    };
+
     /**
      * Factory that only returns 'expensive' filter criterias.
      */
@@ -35,9 +53,11 @@ public class FilterLongFactory<T> implements FilterCriteriaFactory<T> {
 
     public FilterCriteria<T> getCriteria(final FilterParameter filterParameter) {
 
-        final Long match = parseNullableLong(filterParameter.getFieldMatch());
+        final boolean isRange = FilterRanges.isRange(filterParameter.getFieldMatch());
+        final Long match = isRange ? null : parseNullableLong(filterParameter.getFieldMatch());
+        final LongRange range = isRange ? FilterRanges.parse(filterParameter.getFieldMatch(), valueParser) : (match == null ? null : new LongRange(match, match));
 
-        return new FilterCriteria<T>() {
+        return new CombinableRangeFilterCriteria<T>() {
 
             @Override
             public String getColumnName() {
@@ -51,6 +71,7 @@ public class FilterLongFactory<T> implements FilterCriteriaFactory<T> {
 
             @Override
             public Object getMatch() {
+                // Ranges have no single match, they are only available through getRange().
                 return match;
             }
 
@@ -65,18 +86,46 @@ public class FilterLongFactory<T> implements FilterCriteriaFactory<T> {
                     @Override
                     public boolean apply(final T type) {
                         final Long value = longAdapter.getValue(type);
-                        if (match == null || value == null) {
+                        if (range == null || value == null) {
                             return false;
                         }
 
-                        return value.equals(match);
+                        return range.containsLong(value);
+                    }
+                };
+            }
+
+            @Override
+            public Object getCombineKey() {
+                return isRange ? null : FilterLongFactory.this;
+            }
+
+            @Override
+            public LongRange getRange() {
+                return range;
+            }
+
+            @Override
+            public Predicate<T> getCombinedPredicate(final Collection<Object> includeMatches, final Collection<Object> excludeMatches) {
+                final boolean including = !includeMatches.isEmpty();
+                final LongHashSet includes = toSet(includeMatches);
+                final LongHashSet excludes = toSet(excludeMatches);
+
+                return new Predicate<T>() {
+                    @Override
+                    public boolean apply(final T type) {
+                        final Long value = longAdapter.getValue(type);
+                        if (value == null) {
+                            return !including;
+                        }
+                        return (!including || includes.contains(value)) && !excludes.contains(value);
                     }
                 };
             }
 
             @Override
             public String toString() {
-                return String.format("LongFilterCriteria(match=%d, columnName=%s, including=%b)", match, columnName, isIncluding());
+                return String.format("LongFilterCriteria(match=%s, columnName=%s, including=%b)", isRange ? range : match, columnName, isIncluding());
             }
 
             @Override
@@ -91,6 +140,31 @@ public class FilterLongFactory<T> implements FilterCriteriaFactory<T> {
         };
     }
 
+    /**
+     * Creates an index over the values of this factory, to register with an {@link IndexedDataset}.
+     */
+    public FilterIndex<T> createIndex(final List<T> elements) {
+
+        return new SortedKeyIndex<T>(elements, new Function<T, Long>() {
+            @Override
+            public Long apply(final T element) {
+                return longAdapter.getValue(element);
+            }
+        });
+    }
+
+    private LongHashSet toSet(final Collection<Object> matches) {
+
+        final LongHashSet values = new LongHashSet(matches.size());
+        for (Object match : matches) {
+            // Matches that did not parse never match anything.
+            if (match != null) {
+                values.add((Long) match);
+            }
+        }
+        return values;
+    }
+
     private Long parseNullableLong(final String value) {
 
         try {
@@ -0,0 +1,74 @@
+package com.ning.fsp.filtering;
+
+import org.apache.commons.lang.math.LongRange;
+
+import com.google.common.base.Function;
+
+/**
+ * Parses range matches for numeric and date filters. A range match is one of
+ *
+ * <ul>
+ *   <li><code>&lt;x</code>, <code>&lt;=x</code>, <code>&gt;x</code> or <code>&gt;=x</code> for open ranges,</li>
+ *   <li><code>x..y</code> for all values between x and y, both inclusive.</li>
+ * </ul>
+ *
+ * Ranges are returned as inclusive {@link LongRange}s, so that a cheap filter can push them down to the
+ * database as a BETWEEN clause.
+ */
+public final class FilterRanges {
+
+    private static final String BETWEEN = "..";
+
+    private FilterRanges() {
+    }
+
+    /**
+     * Returns true if the match is a range match and not a single value.
+     */
+    public static boolean isRange(final String match) {
+        if (match == null) {
+            return false;
+        }
+        final String value = match.trim();
+        return value.startsWith("<") || value.startsWith(">") || value.indexOf(BETWEEN, 1) > 0;
+    }
+
+    /**
+     * Parses a range match.
+     *
+     * @param match The range match.
+     * @param valueParser Parses a single value of the range, returns null if the value is invalid.
+     * @return The range of matching values or null if no value can match, e.g. because a value did not parse.
+     */
+    public static LongRange parse(final String match, final Function<String, Long> valueParser) {
+        if (!isRange(match)) {
+            throw new IllegalArgumentException(String.format("'%s' is not a range!", match));
+        }
+
+        final String value = match.trim();
+        if (value.startsWith("<=")) {
+            final Long upper = valueParser.apply(value.substring(2).trim());
+            return (upper == null) ? null : new LongRange(Long.MIN_VALUE, upper.longValue());
+        }
+        else if (value.startsWith("<")) {
+            final Long upper = valueParser.apply(value.substring(1).trim());
+            return (upper == null || upper == Long.MIN_VALUE) ? null : new LongRange(Long.MIN_VALUE, upper - 1);
+        }
+        else if (value.startsWith(">=")) {
+            final Long lower = valueParser.apply(value.substring(2).trim());
+            return (lower == null) ? null : new LongRange(lower.longValue(), Long.MAX_VALUE);
+        }
+        else if (value.startsWith(">")) {
+            final Long lower = valueParser.apply(value.substring(1).trim());
+            return (lower == null || lower == Long.MAX_VALUE) ? null : new LongRange(lower + 1, Long.MAX_VALUE);
+        }
+
+        final int between = value.indexOf(BETWEEN, 1);
+        final Long lower = valueParser.apply(value.substring(0, between).trim());
+        final Long upper = valueParser.apply(value.substring(between + BETWEEN.length()).trim());
+        if (lower == null || upper == null || lower > upper) {
+            return null;
+        }
+        return new LongRange(lower, upper);
+    }
+}
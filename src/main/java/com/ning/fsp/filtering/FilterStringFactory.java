@@ -1,9 +1,15 @@
 package com.ning.fsp.filtering;
 
-import org.apache.commons.lang.StringUtils;
+import java.util.Collection;
+import java.util.List;
 
+import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.ning.fsp.FilterParameter;
+import com.ning.fsp.filtering.index.BitmapIndex;
+import com.ning.fsp.filtering.index.FilterIndex;
+import com.ning.fsp.filtering.index.IndexedDataset;
+import com.ning.fsp.filtering.index.TrigramIndex;
 import com.ning.fsp.util.Adapter;
 import com.ning.fsp.util.StringMatchType;
 
@@ -46,7 +52,9 @@ public class FilterStringFactory<T> implements FilterCriteriaFactory<T> {
 
     public FilterCriteria<T> getCriteria(final FilterParameter filterParameter) {
 
-        return new FilterCriteria<T>() {
+        final StringMatcher matcher = StringMatcher.compile(matchType, filterParameter.getFieldMatch());
+
+        return new CombinableFilterCriteria<T>() {
 
             @Override
             public String getColumnName() {
@@ -68,20 +76,7 @@ public class FilterStringFactory<T> implements FilterCriteriaFactory<T> {
                 return new Predicate<T>() {
                     @Override
                     public boolean apply(final T type) {
-                        final String value = stringAdapter.getValue(type);
-
-                        switch (matchType) {
-                        case CASE_SENSITIVE_EXACT:
-                            return StringUtils.equals(value, filterParameter.getFieldMatch());
-                        case CASE_INSENSITIVE_EXACT:
-                            return StringUtils.equalsIgnoreCase(value, filterParameter.getFieldMatch());
-                        case CASE_SENSITIVE_PARTIAL:
-                            return StringUtils.contains(value, filterParameter.getFieldMatch());
-                        case CASE_INSENSITIVE_PARTIAL:
-                            return StringUtils.containsIgnoreCase(value, filterParameter.getFieldMatch());
-                        default:
-                            throw new IllegalArgumentException(String.format("Found unknown match type %s", matchType));
-                        }
+                        return matcher.matches(stringAdapter.getValue(type));
                     }
                 };
             }
@@ -91,6 +86,25 @@ public class FilterStringFactory<T> implements FilterCriteriaFactory<T> {
                 return filterParameter.getFieldMatch();
             }
 
+            @Override
+            public Object getCombineKey() {
+                return FilterStringFactory.this;
+            }
+
+            @Override
+            public Predicate<T> getCombinedPredicate(final Collection<Object> includeMatches, final Collection<Object> excludeMatches) {
+                final boolean including = !includeMatches.isEmpty();
+                final MultiStringMatcher multiMatcher = new MultiStringMatcher(matchType, includeMatches, excludeMatches);
+
+                return new Predicate<T>() {
+                    @Override
+                    public boolean apply(final T type) {
+                        final int found = multiMatcher.scan(stringAdapter.getValue(type));
+                        return (!including || (found & MultiStringMatcher.INCLUDE) != 0) && (found & MultiStringMatcher.EXCLUDE) == 0;
+                    }
+                };
+            }
+
             @Override
             public String toString() {
                 return String.format("StringFilterCriteria(match=%s, columnName=%s, including=%b)", filterParameter.getFieldMatch(), columnName, isIncluding());
@@ -107,6 +121,32 @@ public class FilterStringFactory<T> implements FilterCriteriaFactory<T> {
             }
         };
     }
-}
 
+    /**
+     * Creates a bitmap index over the values of this factory, to register with an {@link IndexedDataset}. This
+     * pays off for fields with few distinct values, like enum names.
+     */
+    public FilterIndex<T> createBitmapIndex(final List<T> elements) {
 
+        return new BitmapIndex<T>(elements, new Function<T, String>() {
+            @Override
+            public String apply(final T element) {
+                return stringAdapter.getValue(element);
+            }
+        });
+    }
+
+    /**
+     * Creates a trigram index over the case folded values of this factory, to register with an {@link IndexedDataset}.
+     * This pays off for substring searches, i.e. the partial match types, over many rows.
+     */
+    public FilterIndex<T> createTrigramIndex(final List<T> elements) {
+
+        return new TrigramIndex<T>(elements, new Function<T, String>() {
+            @Override
+            public String apply(final T element) {
+                return stringAdapter.getValue(element);
+            }
+        });
+    }
+}
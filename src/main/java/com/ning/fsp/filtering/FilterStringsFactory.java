@@ -1,6 +1,6 @@
 package com.ning.fsp.filtering;
 
-import org.apache.commons.lang.StringUtils;
+import java.util.Collection;
 
 import com.google.common.base.Predicate;
 import com.ning.fsp.FilterParameter;
@@ -46,7 +46,9 @@ public class FilterStringsFactory<T> implements FilterCriteriaFactory<T> {
 
     public FilterCriteria<T> getCriteria(final FilterParameter filterParameter) {
 
-        return new FilterCriteria<T>() {
+        final StringMatcher matcher = StringMatcher.compile(matchType, filterParameter.getFieldMatch());
+
+        return new CombinableFilterCriteria<T>() {
 
             @Override
             public String getColumnName() {
@@ -69,29 +71,8 @@ public class FilterStringsFactory<T> implements FilterCriteriaFactory<T> {
                     @Override
                     public boolean apply(final T type) {
                         for (final String value : stringAdapter.getValue(type)) {
-                            switch (matchType) {
-                                case CASE_SENSITIVE_EXACT:
-                                    if(StringUtils.equals(value, filterParameter.getFieldMatch())) {
-                                        return true;
-                                    }
-                                    break;
-                                case CASE_INSENSITIVE_EXACT:
-                                    if (StringUtils.equalsIgnoreCase(value, filterParameter.getFieldMatch())) {
-                                        return true;
-                                    }
-                                    break;
-                                case CASE_SENSITIVE_PARTIAL:
-                                    if (StringUtils.contains(value, filterParameter.getFieldMatch())) {
-                                        return true;
-                                    }
-                                    break;
-                                case CASE_INSENSITIVE_PARTIAL:
-                                    if (StringUtils.containsIgnoreCase(value, filterParameter.getFieldMatch())) {
-                                        return true;
-                                    }
-                                    break;
-                                default:
-                                    throw new IllegalArgumentException(String.format("Found unknown match type %s", matchType));
+                            if (matcher.matches(value)) {
+                                return true;
                             }
                         }
                         return false;
@@ -99,6 +80,31 @@ public class FilterStringsFactory<T> implements FilterCriteriaFactory<T> {
                 };
             }
 
+            @Override
+            public Object getCombineKey() {
+                return FilterStringsFactory.this;
+            }
+
+            @Override
+            public Predicate<T> getCombinedPredicate(final Collection<Object> includeMatches, final Collection<Object> excludeMatches) {
+                final boolean including = !includeMatches.isEmpty();
+                final MultiStringMatcher multiMatcher = new MultiStringMatcher(matchType, includeMatches, excludeMatches);
+
+                return new Predicate<T>() {
+                    @Override
+                    public boolean apply(final T type) {
+                        int found = 0;
+                        for (final String value : stringAdapter.getValue(type)) {
+                            found |= multiMatcher.scan(value);
+                            if (multiMatcher.isDecided(found)) {
+                                break;
+                            }
+                        }
+                        return (!including || (found & MultiStringMatcher.INCLUDE) != 0) && (found & MultiStringMatcher.EXCLUDE) == 0;
+                    }
+                };
+            }
+
             @Override
             public Object getMatch() {
                 return filterParameter.getFieldMatch();
@@ -0,0 +1,85 @@
+package com.ning.fsp.filtering;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import com.google.common.base.Predicate;
+
+/**
+ * An immutable, random access list of the elements of another list that matched a predicate. The predicate
+ * is evaluated exactly once per element when the list is created; the list only keeps the indexes of the
+ * matching elements, so size() is O(1) and get() is a single lookup in the source list.
+ *
+ * The source list must not be modified while the filtered list is in use.
+ *
+ * @param <T> The element type to filter.
+ */
+public class FilteredList<T> extends AbstractList<T> implements RandomAccess {
+
+    private final List<T> elements;
+    private final int[] indexes;
+
+    public FilteredList(final List<T> elements, final Predicate<? super T> predicate) {
+        this(elements, null, predicate);
+    }
+
+    /**
+     * Creates a list of the given rows of another list, e.g. the result of an index lookup.
+     *
+     * @param rows The row numbers in ascending order.
+     */
+    public FilteredList(final List<T> elements, final int[] rows) {
+        this(elements, rows, null);
+    }
+
+    /**
+     * Creates a list of the elements of another list that are candidates and match a predicate.
+     *
+     * @param candidates The row numbers of the candidates in ascending order, or null if all rows are candidates.
+     * @param predicate The predicate to test the candidates with, or null if all candidates match.
+     */
+    public FilteredList(final List<T> elements, final int[] candidates, final Predicate<? super T> predicate) {
+        if (!(elements instanceof RandomAccess)) {
+            throw new IllegalArgumentException("elements must be a random access list!");
+        }
+
+        this.elements = elements;
+
+        // Nothing to test, the candidates are the result.
+        if (predicate == null && candidates != null) {
+            this.indexes = candidates.clone();
+            return;
+        }
+
+        final int candidateCount = (candidates == null) ? elements.size() : candidates.length;
+
+        int[] matches = new int[Math.min(candidateCount, 16)];
+        int count = 0;
+        for (int i = 0; i < candidateCount; i++) {
+            final int row = (candidates == null) ? i : candidates[i];
+            if (predicate == null || predicate.apply(elements.get(row))) {
+                if (count == matches.length) {
+                    matches = Arrays.copyOf(matches, Math.max(16, Math.min(candidateCount, 2 * count)));
+                }
+                matches[count++] = row;
+            }
+        }
+
+        this.indexes = (count == matches.length) ? matches : Arrays.copyOf(matches, count);
+    }
+
+    @Override
+    public T get(final int index) {
+        if (index < 0 || index >= indexes.length) {
+            throw new IndexOutOfBoundsException(String.format("Index %d, size %d", index, indexes.length));
+        }
+        return elements.get(indexes[index]);
+    }
+
+    @Override
+    public int size() {
+        return indexes.length;
+    }
+}
@@ -0,0 +1,240 @@
+package com.ning.fsp.filtering;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.Set;
+
+import com.google.common.collect.Sets;
+import com.ning.fsp.util.CaseFolding;
+import com.ning.fsp.util.StringMatchType;
+
+/**
+ * Matches a string against any number of include and exclude match strings in a single pass. Exact
+ * match strings are looked up in hash sets. Partial match strings are found by an Aho-Corasick
+ * automaton, where the transitions for ASCII characters are precomputed into a table and all other
+ * characters follow sparse edges and failure links.
+ *
+ * A scan returns which kinds of match strings matched: {@link #INCLUDE}, {@link #EXCLUDE} or both.
+ * Null match strings behave like they do in a single {@link StringMatcher}.
+ */
+public class MultiStringMatcher {
+
+    public static final int INCLUDE = 1;
+    public static final int EXCLUDE = 2;
+
+    private static final int ASCII = 0x80;
+
+    private final boolean partial;
+    private final boolean ignoreCase;
+    private final boolean hasExcludes;
+
+    // Exact matches, case folded when ignoring case.
+    private final Set<String> includeSet = Sets.newHashSet();
+    private final Set<String> excludeSet = Sets.newHashSet();
+
+    // Partial matches. Per state: ASCII transitions, sorted non-ASCII edges, failure link and the kinds of needles ending here.
+    private int[][] asciiNext;
+    private char[][] edgeChars;
+    private int[][] edgeTargets;
+    private int[] failures;
+    private int[] outputs;
+    private int stateCount = 1;
+
+    /**
+     * @param matchType How to match the strings.
+     * @param includes The match strings that include an element.
+     * @param excludes The match strings that exclude an element.
+     */
+    public MultiStringMatcher(final StringMatchType matchType, final Collection<?> includes, final Collection<?> excludes) {
+        this.partial = matchType == StringMatchType.CASE_SENSITIVE_PARTIAL || matchType == StringMatchType.CASE_INSENSITIVE_PARTIAL;
+        this.ignoreCase = matchType == StringMatchType.CASE_INSENSITIVE_EXACT || matchType == StringMatchType.CASE_INSENSITIVE_PARTIAL;
+
+        if (!partial) {
+            for (Object include : includes) {
+                includeSet.add(fold((String) include));
+            }
+            for (Object exclude : excludes) {
+                excludeSet.add(fold((String) exclude));
+            }
+            this.hasExcludes = !excludeSet.isEmpty();
+            return;
+        }
+
+        int capacity = 1;
+        for (Object needle : includes) {
+            capacity += (needle == null) ? 0 : ((String) needle).length();
+        }
+        boolean excludeNeedles = false;
+        for (Object needle : excludes) {
+            capacity += (needle == null) ? 0 : ((String) needle).length();
+            excludeNeedles |= needle != null;
+        }
+        this.hasExcludes = excludeNeedles;
+
+        asciiNext = new int[capacity][];
+        edgeChars = new char[capacity][];
+        edgeTargets = new int[capacity][];
+        failures = new int[capacity];
+        outputs = new int[capacity];
+
+        for (int state = 0; state < capacity; state++) {
+            asciiNext[state] = new int[ASCII];
+            Arrays.fill(asciiNext[state], -1);
+            edgeChars[state] = new char[0];
+            edgeTargets[state] = new int[0];
+        }
+
+        for (Object needle : includes) {
+            addNeedle((String) needle, INCLUDE);
+        }
+        for (Object needle : excludes) {
+            addNeedle((String) needle, EXCLUDE);
+        }
+
+        link();
+    }
+
+    /**
+     * Scans a value for needles.
+     *
+     * @return The kinds of needles found. The scan stops early once the result can not change anymore.
+     */
+    public int scan(final String value) {
+        if (!partial) {
+            final String key = fold(value);
+            return (includeSet.contains(key) ? INCLUDE : 0) | (excludeSet.contains(key) ? EXCLUDE : 0);
+        }
+        if (value == null) {
+            return 0;
+        }
+
+        int found = outputs[0];
+        int state = 0;
+        for (int i = 0; i < value.length() && !isDecided(found); i++) {
+            final char c = ignoreCase ? CaseFolding.fold(value.charAt(i)) : value.charAt(i);
+            state = next(state, c);
+            found |= outputs[state];
+        }
+        return found;
+    }
+
+    /**
+     * Returns true if finding more needles can not change the outcome of a scan.
+     */
+    public boolean isDecided(final int found) {
+        return (found & EXCLUDE) != 0 || (found == INCLUDE && !hasExcludes);
+    }
+
+    private String fold(final String value) {
+        return (ignoreCase && value != null) ? CaseFolding.fold(value) : value;
+    }
+
+    private void addNeedle(final String needle, final int kind) {
+        if (needle == null) {
+            return;
+        }
+
+        int state = 0;
+        for (int i = 0; i < needle.length(); i++) {
+            final char c = ignoreCase ? CaseFolding.fold(needle.charAt(i)) : needle.charAt(i);
+            int target = goTo(state, c);
+            if (target < 0) {
+                target = stateCount++;
+                addEdge(state, c, target);
+            }
+            state = target;
+        }
+        outputs[state] |= kind;
+    }
+
+    /**
+     * Computes the failure links breadth first and turns the ASCII transitions into a complete table.
+     */
+    private void link() {
+        final Queue<Integer> queue = new LinkedList<Integer>();
+
+        for (int c = 0; c < ASCII; c++) {
+            if (asciiNext[0][c] < 0) {
+                asciiNext[0][c] = 0;
+            }
+            else {
+                queue.add(asciiNext[0][c]);
+            }
+        }
+        for (int target : edgeTargets[0]) {
+            queue.add(target);
+        }
+
+        while (!queue.isEmpty()) {
+            final int state = queue.remove();
+            final int failure = failures[state];
+            outputs[state] |= outputs[failure];
+
+            for (int c = 0; c < ASCII; c++) {
+                final int target = asciiNext[state][c];
+                if (target < 0) {
+                    asciiNext[state][c] = asciiNext[failure][c];
+                }
+                else {
+                    failures[target] = asciiNext[failure][c];
+                    queue.add(target);
+                }
+            }
+            for (int i = 0; i < edgeChars[state].length; i++) {
+                final int target = edgeTargets[state][i];
+                failures[target] = next(failure, edgeChars[state][i]);
+                queue.add(target);
+            }
+        }
+    }
+
+    private int next(int state, final char c) {
+        if (c < ASCII) {
+            return asciiNext[state][c];
+        }
+
+        while (true) {
+            final int target = goTo(state, c);
+            if (target >= 0) {
+                return target;
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = failures[state];
+        }
+    }
+
+    private int goTo(final int state, final char c) {
+        if (c < ASCII) {
+            return asciiNext[state][c];
+        }
+        final int index = Arrays.binarySearch(edgeChars[state], c);
+        return index < 0 ? -1 : edgeTargets[state][index];
+    }
+
+    private void addEdge(final int state, final char c, final int target) {
+        if (c < ASCII) {
+            asciiNext[state][c] = target;
+            return;
+        }
+
+        final char[] chars = edgeChars[state];
+        final int[] targets = edgeTargets[state];
+        final int index = -(Arrays.binarySearch(chars, c) + 1);
+
+        final char[] newChars = new char[chars.length + 1];
+        final int[] newTargets = new int[targets.length + 1];
+        System.arraycopy(chars, 0, newChars, 0, index);
+        System.arraycopy(targets, 0, newTargets, 0, index);
+        newChars[index] = c;
+        newTargets[index] = target;
+        System.arraycopy(chars, index, newChars, index + 1, chars.length - index);
+        System.arraycopy(targets, index, newTargets, index + 1, targets.length - index);
+
+        edgeChars[state] = newChars;
+        edgeTargets[state] = newTargets;
+    }
+}
@@ -0,0 +1,102 @@
+package com.ning.fsp.filtering;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
+
+/**
+ * Filters a random access list on an executor. The list is split into chunks, every chunk is filtered into its
+ * own buffer by a separate task and the buffers are concatenated in input order, so the result is the same as the
+ * one of a sequential filter.
+ *
+ * All tasks are submitted from the calling thread, so any executor with at least one thread can be used.
+ * An {@link AdaptivePredicate} is forked per task, so that the tasks do not share its sampling counter.
+ */
+public final class ParallelFilter {
+
+    /** By default every task gets 4 chunks. More chunks than tasks even out chunks that are slower to filter than others. */
+    public static final int DEFAULT_CHUNKS_PER_TASK = 4;
+
+    private ParallelFilter() {
+    }
+
+    /**
+     * Returns the elements matching the predicate, in input order. The predicate is applied concurrently
+     * and must be thread safe.
+     *
+     * @param parallelism The number of threads of the executor that should work on the list.
+     */
+    public static <T> List<T> filter(final List<T> elements, final Predicate<? super T> predicate, final ExecutorService executor, final int parallelism) {
+        return filter(elements, predicate, executor, parallelism, DEFAULT_CHUNKS_PER_TASK);
+    }
+
+    /**
+     * Returns the elements matching the predicate, in input order. The predicate is applied concurrently
+     * and must be thread safe.
+     *
+     * @param parallelism The number of threads of the executor that should work on the list.
+     * @param chunksPerTask The number of chunks per thread. More chunks balance uneven filter costs better,
+     *                      fewer chunks cost less scheduling and concatenation.
+     */
+    public static <T> List<T> filter(final List<T> elements, final Predicate<? super T> predicate, final ExecutorService executor, final int parallelism, final int chunksPerTask) {
+
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1!");
+        }
+        if (chunksPerTask < 1) {
+            throw new IllegalArgumentException("chunksPerTask must be at least 1!");
+        }
+
+        final int size = elements.size();
+        final int chunkCount = (int) Math.max(1, Math.min(size, (long) parallelism * chunksPerTask));
+
+        final List<Future<List<T>>> chunks = Lists.newArrayListWithCapacity(chunkCount);
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            final int from = (int) ((long) size * chunk / chunkCount);
+            final int to = (int) ((long) size * (chunk + 1) / chunkCount);
+
+            chunks.add(executor.submit(new Callable<List<T>>() {
+                @Override
+                public List<T> call() {
+                    final Predicate<? super T> taskPredicate = forTask(predicate);
+
+                    final List<T> matches = Lists.newArrayList();
+                    for (int i = from; i < to; i++) {
+                        final T element = elements.get(i);
+                        if (taskPredicate.apply(element)) {
+                            matches.add(element);
+                        }
+                    }
+                    return matches;
+                }
+            }));
+        }
+
+        final List<T> result = Lists.newArrayList();
+        try {
+            for (Future<List<T>> chunk : chunks) {
+                result.addAll(chunk.get());
+            }
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while filtering!", ie);
+        }
+        catch (ExecutionException ee) {
+            if (ee.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ee.getCause();
+            }
+            throw new IllegalStateException("Parallel filter failed!", ee.getCause());
+        }
+        return result;
+    }
+
+    private static <E> Predicate<E> forTask(final Predicate<E> predicate) {
+        return (predicate instanceof AdaptivePredicate) ? ((AdaptivePredicate<E>) predicate).fork() : predicate;
+    }
+}
@@ -0,0 +1,18 @@
+package com.ning.fsp.filtering;
+
+import org.apache.commons.lang.math.LongRange;
+
+/**
+ * A filter criteria that matches elements whose key is in a range of long values. Numeric values are their
+ * own keys, dates use their milliseconds. A single value match is the range of just that value.
+ *
+ * @param <T> The element type to filter.
+ */
+public interface RangeFilterCriteria<T> extends FilterCriteria<T>
+{
+    /**
+     * Returns the inclusive range of matching keys, or null if the criteria matches nothing. Elements without
+     * a key never match.
+     */
+    LongRange getRange();
+}
@@ -0,0 +1,142 @@
+package com.ning.fsp.filtering;
+
+import java.util.Arrays;
+
+import com.ning.fsp.util.CaseFolding;
+import com.ning.fsp.util.StringMatchType;
+
+/**
+ * Matches strings against a match string that is compiled once per criteria. Case insensitive
+ * matchers fold the match string up front and the values one character at a time, so matching
+ * does not allocate. Partial matches use a Boyer-Moore-Horspool search.
+ *
+ * Case is folded per character, so case insensitive matches do not depend on the default locale
+ * and do not expand characters such as the German sharp s.
+ */
+public abstract class StringMatcher {
+
+    /**
+     * Returns true if the value matches. A null value only matches a null match string in the exact
+     * match types, and never matches in the partial match types.
+     */
+    public abstract boolean matches(String value);
+
+    public static StringMatcher compile(final StringMatchType matchType, final String match) {
+
+        switch (matchType) {
+        case CASE_SENSITIVE_EXACT:
+            return new ExactMatcher(match);
+        case CASE_INSENSITIVE_EXACT:
+            return new ExactIgnoreCaseMatcher(match);
+        case CASE_SENSITIVE_PARTIAL:
+            return new PartialMatcher(match, false);
+        case CASE_INSENSITIVE_PARTIAL:
+            return new PartialMatcher(match, true);
+        default:
+            throw new IllegalArgumentException(String.format("Found unknown match type %s", matchType));
+        }
+    }
+
+    private static final class ExactMatcher extends StringMatcher {
+
+        private final String match;
+
+        private ExactMatcher(final String match) {
+            this.match = match;
+        }
+
+        @Override
+        public boolean matches(final String value) {
+            return (match == null) ? value == null : match.equals(value);
+        }
+    }
+
+    private static final class ExactIgnoreCaseMatcher extends StringMatcher {
+
+        private final char[] match;
+
+        private ExactIgnoreCaseMatcher(final String match) {
+            this.match = (match == null) ? null : CaseFolding.fold(match).toCharArray();
+        }
+
+        @Override
+        public boolean matches(final String value) {
+            if (match == null || value == null) {
+                return match == null && value == null;
+            }
+            if (value.length() != match.length) {
+                return false;
+            }
+            for (int i = 0; i < match.length; i++) {
+                if (CaseFolding.fold(value.charAt(i)) != match[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class PartialMatcher extends StringMatcher {
+
+        // Characters are hashed into the shift table by their low byte. Characters that share a slot
+        // get the smallest of their shifts, which is always safe.
+        private static final int SHIFT_MASK = 0xff;
+
+        private final char[] match;
+        private final boolean ignoreCase;
+        private final int[] shifts;
+
+        private PartialMatcher(final String match, final boolean ignoreCase) {
+            this.ignoreCase = ignoreCase;
+
+            if (match == null) {
+                this.match = null;
+                this.shifts = null;
+                return;
+            }
+
+            this.match = (ignoreCase ? CaseFolding.fold(match) : match).toCharArray();
+            this.shifts = new int[SHIFT_MASK + 1];
+
+            final int last = this.match.length - 1;
+            Arrays.fill(shifts, Math.max(this.match.length, 1));
+            for (int i = 0; i < last; i++) {
+                shifts[this.match[i] & SHIFT_MASK] = last - i;
+            }
+        }
+
+        @Override
+        public boolean matches(final String value) {
+            if (match == null || value == null) {
+                return false;
+            }
+
+            final int last = match.length - 1;
+            if (last < 0) {
+                return true;
+            }
+
+            final int end = value.length() - last;
+            int position = 0;
+            while (position < end) {
+                final char c = charAt(value, position + last);
+                if (c == match[last]) {
+                    int i = last - 1;
+                    while (i >= 0 && charAt(value, position + i) == match[i]) {
+                        i--;
+                    }
+                    if (i < 0) {
+                        return true;
+                    }
+                }
+                position += shifts[c & SHIFT_MASK];
+            }
+            return false;
+        }
+
+        private char charAt(final String value, final int index) {
+            final char c = value.charAt(index);
+            return ignoreCase ? CaseFolding.fold(c) : c;
+        }
+    }
+}
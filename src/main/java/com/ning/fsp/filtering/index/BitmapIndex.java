@@ -0,0 +1,75 @@
+package com.ning.fsp.filtering.index;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Maps;
+import com.ning.fsp.filtering.FilterCriteria;
+
+/**
+ * An index for fields with few distinct values, e.g. booleans, enum-like strings or small integers. The index keeps
+ * a compressed bitmap of the rows for every distinct value, and one row as a representative of the value.
+ *
+ * A criteria is looked up by testing its predicate once per distinct value on the representative and combining
+ * the bitmaps of the matching values. This only works if the predicate depends on nothing but the indexed value,
+ * so the index should be created by the factory of the field.
+ *
+ * @param <T> The element type to filter.
+ */
+public class BitmapIndex<T> implements FilterIndex<T> {
+
+    private final Map<Object, T> representatives = Maps.newLinkedHashMap();
+    private final Map<Object, RowSet> bitmaps = Maps.newHashMap();
+
+    /**
+     * @param elements The rows of the dataset.
+     * @param valueFunction Returns the indexed value of a row. Values must implement equals() and hashCode().
+     */
+    public BitmapIndex(final List<T> elements, final Function<? super T, ?> valueFunction) {
+        final Map<Object, RowSet.Builder> builders = Maps.newHashMap();
+
+        int row = 0;
+        for (T element : elements) {
+            final Object value = valueFunction.apply(element);
+
+            RowSet.Builder builder = builders.get(value);
+            if (builder == null) {
+                builder = new RowSet.Builder();
+                builders.put(value, builder);
+                representatives.put(value, element);
+            }
+            builder.add(row++);
+        }
+
+        for (Map.Entry<Object, RowSet.Builder> entry : builders.entrySet()) {
+            bitmaps.put(entry.getKey(), entry.getValue().build());
+        }
+    }
+
+    @Override
+    public RowSet lookup(final FilterCriteria<T> criteria) {
+        final Predicate<T> predicate = criteria.getPredicate();
+
+        RowSet rows = RowSet.empty();
+        for (Map.Entry<Object, T> representative : representatives.entrySet()) {
+            if (predicate.apply(representative.getValue())) {
+                rows = rows.or(bitmaps.get(representative.getKey()));
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public boolean isExact() {
+        return true;
+    }
+
+    /**
+     * Returns the number of distinct values.
+     */
+    public int getCardinality() {
+        return bitmaps.size();
+    }
+}
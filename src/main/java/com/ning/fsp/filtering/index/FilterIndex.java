@@ -0,0 +1,24 @@
+package com.ning.fsp.filtering.index;
+
+import com.ning.fsp.filtering.FilterCriteria;
+
+/**
+ * An index over a field of the rows of an {@link IndexedDataset}. An index answers the criterias of its
+ * field by looking up the matching rows instead of testing every row.
+ *
+ * @param <T> The element type to filter.
+ */
+public interface FilterIndex<T>
+{
+    /**
+     * Returns the rows matching a criteria, or null if the index can not answer the criteria. The criteria
+     * is always looked up as including; the filter takes care of exclusion.
+     */
+    RowSet lookup(FilterCriteria<T> criteria);
+
+    /**
+     * Returns true if the rows of a lookup are exactly the matching rows. An inexact index may return rows
+     * that do not match, which the filter then tests with the criteria predicates.
+     */
+    boolean isExact();
+}
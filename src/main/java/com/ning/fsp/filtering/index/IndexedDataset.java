@@ -0,0 +1,50 @@
+package com.ning.fsp.filtering.index;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * A fixed set of rows with indexes on some of their fields. A {@link com.ning.fsp.Filter} answers the criterias
+ * of indexed fields from the indexes and only tests the remaining criterias on the rows that are left.
+ *
+ * Building the indexes costs more than a single scan, so a dataset pays off when it is filtered repeatedly.
+ *
+ * @param <T> The element type to filter.
+ */
+public class IndexedDataset<T> {
+
+    private final List<T> elements;
+    private final Map<String, FilterIndex<T>> indexes = Maps.newHashMap();
+
+    public IndexedDataset(final Collection<T> elements) {
+        this.elements = Collections.unmodifiableList(Lists.newArrayList(elements));
+    }
+
+    /**
+     * Returns the rows of the dataset. The position of an element in this list is its row number.
+     */
+    public List<T> getElements() {
+        return elements;
+    }
+
+    /**
+     * Registers an index for a field. The index must have been built over {@link #getElements()}.
+     *
+     * @param fieldName The field name, as used in the filter parameters.
+     */
+    public synchronized void addIndex(final String fieldName, final FilterIndex<T> index) {
+        indexes.put(fieldName, index);
+    }
+
+    /**
+     * Returns the index of a field or null if the field is not indexed.
+     */
+    public synchronized FilterIndex<T> getIndex(final String fieldName) {
+        return indexes.get(fieldName);
+    }
+}
@@ -0,0 +1,449 @@
+package com.ning.fsp.filtering.index;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of row numbers of an {@link IndexedDataset}, kept as a compressed bitmap in the style of
+ * Roaring bitmaps. The rows are split into chunks of 65536 by their upper 16 bits. A sparse chunk stores its rows as
+ * a sorted array of the lower 16 bits, a dense chunk as a plain bitmap of 1024 words, so that set operations on dense
+ * chunks work on 64 rows at a time.
+ */
+public final class RowSet {
+
+    private static final RowSet EMPTY = new RowSet(new char[0], new Container[0]);
+
+    private final char[] keys;
+    private final Container[] containers;
+    private final int size;
+
+    private RowSet(final char[] keys, final Container[] containers) {
+        this.keys = keys;
+        this.containers = containers;
+
+        int cardinality = 0;
+        for (Container container : containers) {
+            cardinality += container.cardinality();
+        }
+        this.size = cardinality;
+    }
+
+    public static RowSet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns the rows from <code>0</code> (inclusive) to <code>count</code> (exclusive).
+     */
+    public static RowSet all(final int count) {
+        final Builder builder = new Builder();
+        for (int row = 0; row < count; row++) {
+            builder.add(row);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns a set of the given rows, which may be in any order and contain duplicates. The array is sorted in place.
+     */
+    public static RowSet of(final int[] rows) {
+        Arrays.sort(rows);
+
+        final Builder builder = new Builder();
+        for (int i = 0; i < rows.length; i++) {
+            if (i == 0 || rows[i] != rows[i - 1]) {
+                builder.add(rows[i]);
+            }
+        }
+        return builder.build();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(final int row) {
+        final int index = Arrays.binarySearch(keys, high(row));
+        return index >= 0 && containers[index].contains(low(row));
+    }
+
+    /**
+     * Returns the rows in ascending order.
+     */
+    public int[] toArray() {
+        final int[] rows = new int[size];
+        int offset = 0;
+        for (int i = 0; i < keys.length; i++) {
+            offset = containers[i].toArray(keys[i] << 16, rows, offset);
+        }
+        return rows;
+    }
+
+    public RowSet and(final RowSet other) {
+        final char[] resultKeys = new char[Math.min(keys.length, other.keys.length)];
+        final Container[] resultContainers = new Container[resultKeys.length];
+        int count = 0;
+
+        for (int i = 0, j = 0; i < keys.length && j < other.keys.length;) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            }
+            else if (keys[i] > other.keys[j]) {
+                j++;
+            }
+            else {
+                final Container container = containers[i].and(other.containers[j]);
+                if (container.cardinality() > 0) {
+                    resultKeys[count] = keys[i];
+                    resultContainers[count++] = container;
+                }
+                i++;
+                j++;
+            }
+        }
+        return new RowSet(Arrays.copyOf(resultKeys, count), Arrays.copyOf(resultContainers, count));
+    }
+
+    public RowSet or(final RowSet other) {
+        final char[] resultKeys = new char[keys.length + other.keys.length];
+        final Container[] resultContainers = new Container[resultKeys.length];
+        int count = 0;
+
+        int i = 0;
+        int j = 0;
+        while (i < keys.length || j < other.keys.length) {
+            if (j == other.keys.length || (i < keys.length && keys[i] < other.keys[j])) {
+                resultKeys[count] = keys[i];
+                resultContainers[count++] = containers[i++];
+            }
+            else if (i == keys.length || keys[i] > other.keys[j]) {
+                resultKeys[count] = other.keys[j];
+                resultContainers[count++] = other.containers[j++];
+            }
+            else {
+                resultKeys[count] = keys[i];
+                resultContainers[count++] = containers[i++].or(other.containers[j++]);
+            }
+        }
+        return new RowSet(Arrays.copyOf(resultKeys, count), Arrays.copyOf(resultContainers, count));
+    }
+
+    public RowSet andNot(final RowSet other) {
+        final char[] resultKeys = new char[keys.length];
+        final Container[] resultContainers = new Container[keys.length];
+        int count = 0;
+
+        int j = 0;
+        for (int i = 0; i < keys.length; i++) {
+            while (j < other.keys.length && other.keys[j] < keys[i]) {
+                j++;
+            }
+
+            final Container container = (j < other.keys.length && other.keys[j] == keys[i]) ? containers[i].andNot(other.containers[j]) : containers[i];
+            if (container.cardinality() > 0) {
+                resultKeys[count] = keys[i];
+                resultContainers[count++] = container;
+            }
+        }
+        return new RowSet(Arrays.copyOf(resultKeys, count), Arrays.copyOf(resultContainers, count));
+    }
+
+    private static char high(final int row) {
+        return (char) (row >>> 16);
+    }
+
+    private static char low(final int row) {
+        return (char) row;
+    }
+
+    /**
+     * Builds a row set from rows that are added in ascending order.
+     */
+    public static final class Builder {
+
+        private char[] buffer = new char[16];
+        private int bufferSize = 0;
+        private int currentKey = -1;
+        private int lastRow = -1;
+
+        private char[] keys = new char[4];
+        private Container[] containers = new Container[4];
+        private int count = 0;
+
+        public Builder add(final int row) {
+            if (row < 0 || row <= lastRow) {
+                throw new IllegalArgumentException(String.format("Rows must be added in ascending order, got %d after %d!", row, lastRow));
+            }
+            lastRow = row;
+
+            if (high(row) != currentKey) {
+                flush();
+                currentKey = high(row);
+            }
+            if (bufferSize == buffer.length) {
+                buffer = Arrays.copyOf(buffer, bufferSize * 2);
+            }
+            buffer[bufferSize++] = low(row);
+            return this;
+        }
+
+        public RowSet build() {
+            flush();
+            return new RowSet(Arrays.copyOf(keys, count), Arrays.copyOf(containers, count));
+        }
+
+        private void flush() {
+            if (bufferSize == 0) {
+                return;
+            }
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, count * 2);
+                containers = Arrays.copyOf(containers, count * 2);
+            }
+            keys[count] = (char) currentKey;
+            containers[count++] = Container.of(buffer, bufferSize);
+            bufferSize = 0;
+        }
+    }
+
+    /**
+     * The rows of one chunk of 65536 rows, by their lower 16 bits.
+     */
+    private abstract static class Container {
+
+        // Above this many rows, a bitmap is smaller than an array.
+        static final int MAX_ARRAY_SIZE = 4096;
+
+        abstract int cardinality();
+
+        abstract boolean contains(char value);
+
+        abstract int toArray(int base, int[] rows, int offset);
+
+        abstract Container and(Container other);
+
+        abstract Container or(Container other);
+
+        abstract Container andNot(Container other);
+
+        /**
+         * Returns a container for the given sorted values.
+         */
+        static Container of(final char[] values, final int count) {
+            if (count <= MAX_ARRAY_SIZE) {
+                return new ArrayContainer(Arrays.copyOf(values, count));
+            }
+            final long[] words = new long[BitmapContainer.WORDS];
+            for (int i = 0; i < count; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            return new BitmapContainer(words, count);
+        }
+
+        /**
+         * Returns the smallest container for the given bitmap.
+         */
+        static Container of(final long[] words) {
+            int cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+            if (cardinality > MAX_ARRAY_SIZE) {
+                return new BitmapContainer(words, cardinality);
+            }
+
+            final char[] values = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[count++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(values);
+        }
+    }
+
+    private static final class ArrayContainer extends Container {
+
+        private final char[] values;
+
+        private ArrayContainer(final char[] values) {
+            this.values = values;
+        }
+
+        @Override
+        int cardinality() {
+            return values.length;
+        }
+
+        @Override
+        boolean contains(final char value) {
+            return Arrays.binarySearch(values, value) >= 0;
+        }
+
+        @Override
+        int toArray(final int base, final int[] rows, int offset) {
+            for (char value : values) {
+                rows[offset++] = base | value;
+            }
+            return offset;
+        }
+
+        @Override
+        Container and(final Container other) {
+            final char[] result = new char[values.length];
+            int count = 0;
+
+            if (other instanceof BitmapContainer) {
+                for (char value : values) {
+                    if (other.contains(value)) {
+                        result[count++] = value;
+                    }
+                }
+            }
+            else {
+                final char[] otherValues = ((ArrayContainer) other).values;
+                for (int i = 0, j = 0; i < values.length && j < otherValues.length;) {
+                    if (values[i] < otherValues[j]) {
+                        i++;
+                    }
+                    else if (values[i] > otherValues[j]) {
+                        j++;
+                    }
+                    else {
+                        result[count++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            }
+            return new ArrayContainer(Arrays.copyOf(result, count));
+        }
+
+        @Override
+        Container or(final Container other) {
+            if (other instanceof BitmapContainer) {
+                return other.or(this);
+            }
+
+            final char[] otherValues = ((ArrayContainer) other).values;
+            final char[] result = new char[values.length + otherValues.length];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < values.length || j < otherValues.length) {
+                if (j == otherValues.length || (i < values.length && values[i] < otherValues[j])) {
+                    result[count++] = values[i++];
+                }
+                else if (i == values.length || values[i] > otherValues[j]) {
+                    result[count++] = otherValues[j++];
+                }
+                else {
+                    result[count++] = values[i++];
+                    j++;
+                }
+            }
+            return Container.of(result, count);
+        }
+
+        @Override
+        Container andNot(final Container other) {
+            final char[] result = new char[values.length];
+            int count = 0;
+            for (char value : values) {
+                if (!other.contains(value)) {
+                    result[count++] = value;
+                }
+            }
+            return new ArrayContainer(Arrays.copyOf(result, count));
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+
+        static final int WORDS = 1024;
+
+        private final long[] words;
+        private final int cardinality;
+
+        private BitmapContainer(final long[] words, final int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(final char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        int toArray(final int base, final int[] rows, int offset) {
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    rows[offset++] = base | ((i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return offset;
+        }
+
+        @Override
+        Container and(final Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+
+            final long[] otherWords = ((BitmapContainer) other).words;
+            final long[] result = new long[WORDS];
+            for (int i = 0; i < WORDS; i++) {
+                result[i] = words[i] & otherWords[i];
+            }
+            return Container.of(result);
+        }
+
+        @Override
+        Container or(final Container other) {
+            final long[] result = words.clone();
+            if (other instanceof ArrayContainer) {
+                for (char value : ((ArrayContainer) other).values) {
+                    result[value >>> 6] |= 1L << value;
+                }
+            }
+            else {
+                final long[] otherWords = ((BitmapContainer) other).words;
+                for (int i = 0; i < WORDS; i++) {
+                    result[i] |= otherWords[i];
+                }
+            }
+            return Container.of(result);
+        }
+
+        @Override
+        Container andNot(final Container other) {
+            final long[] result = words.clone();
+            if (other instanceof ArrayContainer) {
+                for (char value : ((ArrayContainer) other).values) {
+                    result[value >>> 6] &= ~(1L << value);
+                }
+            }
+            else {
+                final long[] otherWords = ((BitmapContainer) other).words;
+                for (int i = 0; i < WORDS; i++) {
+                    result[i] &= ~otherWords[i];
+                }
+            }
+            return Container.of(result);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.ning.fsp.filtering.index;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang.math.LongRange;
+
+import com.google.common.base.Function;
+import com.ning.fsp.filtering.FilterCriteria;
+import com.ning.fsp.filtering.RangeFilterCriteria;
+import com.ning.fsp.sorting.LongSort;
+
+/**
+ * An index over a long key (a number or the milliseconds of a date). The keys of all rows are kept in a sorted
+ * column, so a range or equality criteria is answered by two binary searches instead of a scan.
+ *
+ * @param <T> The element type to filter.
+ */
+public class SortedKeyIndex<T> implements FilterIndex<T> {
+
+    private final long[] keys;
+    private final int[] rows;
+
+    /**
+     * @param elements The rows of the dataset.
+     * @param keyFunction Returns the key of a row, or null if the row has no key.
+     */
+    public SortedKeyIndex(final List<T> elements, final Function<? super T, Long> keyFunction) {
+        long[] rowKeys = new long[elements.size()];
+        int[] rowNumbers = new int[elements.size()];
+
+        int size = 0;
+        int row = 0;
+        for (T element : elements) {
+            final Long key = keyFunction.apply(element);
+            if (key != null) {
+                rowKeys[size] = key;
+                rowNumbers[size++] = row;
+            }
+            row++;
+        }
+
+        // Rows without a key never match, so they are not indexed.
+        rowKeys = Arrays.copyOf(rowKeys, size);
+        rowNumbers = Arrays.copyOf(rowNumbers, size);
+        LongSort.sort(rowKeys, rowNumbers);
+
+        this.keys = rowKeys;
+        this.rows = rowNumbers;
+    }
+
+    @Override
+    public RowSet lookup(final FilterCriteria<T> criteria) {
+        if (!(criteria instanceof RangeFilterCriteria)) {
+            return null;
+        }
+
+        final LongRange range = ((RangeFilterCriteria<T>) criteria).getRange();
+        if (range == null) {
+            return RowSet.empty();
+        }
+
+        final int from = lowerBound(range.getMinimumLong());
+        final int to = upperBound(range.getMaximumLong());
+        return (from >= to) ? RowSet.empty() : RowSet.of(Arrays.copyOfRange(rows, from, to));
+    }
+
+    @Override
+    public boolean isExact() {
+        return true;
+    }
+
+    /**
+     * Returns the position of the first key that is not less than the given key.
+     */
+    private int lowerBound(final long key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (keys[middle] < key) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the position of the first key that is greater than the given key.
+     */
+    private int upperBound(final long key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (keys[middle] <= key) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
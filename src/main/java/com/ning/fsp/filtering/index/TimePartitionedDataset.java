@@ -0,0 +1,161 @@
+package com.ning.fsp.filtering.index;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.SortedMap;
+
+import org.apache.commons.lang.math.LongRange;
+import org.joda.time.DateTime;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.ning.fsp.util.Adapter;
+
+/**
+ * A growing set of rows that is partitioned by a date field into fixed time buckets, e.g. one per day. A
+ * {@link com.ning.fsp.Filter} skips whole partitions that lie outside the dates requested by the date criterias,
+ * and only tests the remaining criterias on the partitions that lie completely inside.
+ *
+ * Rows can be added at any time; filters work on the partitions as they were when the filter started.
+ *
+ * @param <T> The element type to filter.
+ */
+public class TimePartitionedDataset<T> {
+
+    /** Partitions of a day, starting at midnight UTC. */
+    public static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private final String fieldName;
+    private final Adapter<T, DateTime> dateAdapter;
+    private final long bucketMillis;
+
+    private final SortedMap<Long, Bucket> buckets = Maps.newTreeMap();
+    private final Bucket undated = new Bucket();
+    private int size = 0;
+
+    /**
+     * Creates a dataset partitioned by day.
+     *
+     * @param fieldName The name of the date field, as used in the filter parameters.
+     * @param dateAdapter Returns the date of a row. This must return the same dates as the adapter of the filter for that field.
+     */
+    public TimePartitionedDataset(final String fieldName, final Adapter<T, DateTime> dateAdapter) {
+        this(fieldName, dateAdapter, DAY_MILLIS);
+    }
+
+    public TimePartitionedDataset(final String fieldName, final Adapter<T, DateTime> dateAdapter, final long bucketMillis) {
+        if (bucketMillis <= 0) {
+            throw new IllegalArgumentException("bucketMillis must be positive!");
+        }
+        this.fieldName = fieldName;
+        this.dateAdapter = dateAdapter;
+        this.bucketMillis = bucketMillis;
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    public synchronized void add(final T element) {
+        final DateTime date = dateAdapter.getValue(element);
+        if (date == null) {
+            undated.add(element, 0L);
+        }
+        else {
+            final long millis = date.getMillis();
+            final long bucketStart = (millis >= 0 ? millis / bucketMillis : -((-millis - 1) / bucketMillis) - 1) * bucketMillis;
+
+            Bucket bucket = buckets.get(bucketStart);
+            if (bucket == null) {
+                bucket = new Bucket();
+                buckets.put(bucketStart, bucket);
+            }
+            bucket.add(element, millis);
+        }
+        size++;
+    }
+
+    public void addAll(final Iterable<? extends T> elements) {
+        for (T element : elements) {
+            add(element);
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the current partitions in time order. Rows without a date are in a last partition without a range.
+     */
+    public synchronized List<Partition<T>> getPartitions() {
+        final ImmutableList.Builder<Partition<T>> partitions = ImmutableList.builder();
+        for (Bucket bucket : buckets.values()) {
+            partitions.add(new Partition<T>(bucket.elements, bucket.size, new LongRange(bucket.minMillis, bucket.maxMillis)));
+        }
+        if (undated.size > 0) {
+            partitions.add(new Partition<T>(undated.elements, undated.size, null));
+        }
+        return partitions.build();
+    }
+
+    /**
+     * The rows of one time bucket, as they were when the partition was returned.
+     */
+    public static final class Partition<T> extends AbstractList<T> implements RandomAccess {
+
+        private final Object[] elements;
+        private final int size;
+        private final LongRange range;
+
+        private Partition(final Object[] elements, final int size, final LongRange range) {
+            this.elements = elements;
+            this.size = size;
+            this.range = range;
+        }
+
+        /**
+         * Returns the range of the dates (in milliseconds) of the rows of this partition, or null for the rows without date.
+         */
+        public LongRange getRange() {
+            return range;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(final int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(String.format("Index %d, size %d", index, size));
+            }
+            return (T) elements[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * The rows of a bucket. A bucket only ever appends, so that a partition can share its array.
+     */
+    private static final class Bucket {
+
+        private Object[] elements = new Object[16];
+        private int size = 0;
+        private long minMillis = Long.MAX_VALUE;
+        private long maxMillis = Long.MIN_VALUE;
+
+        private void add(final Object element, final long millis) {
+            if (size == elements.length) {
+                // Copy instead of growing in place, partitions may still use the old array.
+                elements = Arrays.copyOf(elements, size * 2);
+            }
+            elements[size++] = element;
+            minMillis = Math.min(minMillis, millis);
+            maxMillis = Math.max(maxMillis, millis);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.ning.fsp.filtering.index;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Maps;
+import com.ning.fsp.filtering.FilterCriteria;
+import com.ning.fsp.util.CaseFolding;
+
+/**
+ * An inverted index of the trigrams (substrings of three characters) of the case folded values of a string field,
+ * for substring searches. A lookup intersects the rows of all trigrams of the folded match, which leaves the rows
+ * that contain every trigram of the match. These are only candidates, the filter still tests them with the criteria.
+ *
+ * Any string criteria with a match of at least three characters can be looked up, since a value that matches
+ * exactly or partially, with or without case, always contains the trigrams of the folded match. Shorter matches
+ * can not be answered by the index.
+ *
+ * @param <T> The element type to filter.
+ */
+public class TrigramIndex<T> implements FilterIndex<T> {
+
+    private static final int GRAM_LENGTH = 3;
+
+    private final Map<Long, RowSet> postings = Maps.newHashMap();
+
+    /**
+     * @param elements The rows of the dataset.
+     * @param valueFunction Returns the indexed string of a row, may return null.
+     */
+    public TrigramIndex(final List<T> elements, final Function<? super T, String> valueFunction) {
+        final Map<Long, Posting> builders = Maps.newHashMap();
+
+        int row = 0;
+        for (T element : elements) {
+            final String value = valueFunction.apply(element);
+            if (value != null) {
+                final String folded = CaseFolding.fold(value);
+                for (int i = 0; i + GRAM_LENGTH <= folded.length(); i++) {
+                    final Long gram = gram(folded, i);
+
+                    Posting posting = builders.get(gram);
+                    if (posting == null) {
+                        posting = new Posting();
+                        builders.put(gram, posting);
+                    }
+                    posting.add(row);
+                }
+            }
+            row++;
+        }
+
+        for (Map.Entry<Long, Posting> entry : builders.entrySet()) {
+            postings.put(entry.getKey(), entry.getValue().builder.build());
+        }
+    }
+
+    @Override
+    public RowSet lookup(final FilterCriteria<T> criteria) {
+        final Object match = criteria.getMatch();
+        if (!(match instanceof String) || ((String) match).length() < GRAM_LENGTH) {
+            return null;
+        }
+
+        final String folded = CaseFolding.fold((String) match);
+        final RowSet[] lists = new RowSet[folded.length() - GRAM_LENGTH + 1];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = postings.get(gram(folded, i));
+            if (lists[i] == null) {
+                return RowSet.empty();
+            }
+        }
+
+        // Intersect the rarest trigrams first, so the intermediate sets stay small.
+        Arrays.sort(lists, new Comparator<RowSet>() {
+            @Override
+            public int compare(final RowSet left, final RowSet right) {
+                return left.size() - right.size();
+            }
+        });
+
+        RowSet rows = lists[0];
+        for (int i = 1; i < lists.length && !rows.isEmpty(); i++) {
+            rows = rows.and(lists[i]);
+        }
+        return rows;
+    }
+
+    @Override
+    public boolean isExact() {
+        return false;
+    }
+
+    /**
+     * Returns the number of distinct trigrams.
+     */
+    public int getTrigramCount() {
+        return postings.size();
+    }
+
+    private static Long gram(final String folded, final int offset) {
+        return ((long) folded.charAt(offset) << 32) | ((long) folded.charAt(offset + 1) << 16) | folded.charAt(offset + 2);
+    }
+
+    /**
+     * The rows of a trigram. A trigram can occur several times in a value, but its row is only added once.
+     */
+    private static final class Posting {
+
+        private final RowSet.Builder builder = new RowSet.Builder();
+        private int lastRow = -1;
+
+        private void add(final int row) {
+            if (row != lastRow) {
+                builder.add(row);
+                lastRow = row;
+            }
+        }
+    }
+}
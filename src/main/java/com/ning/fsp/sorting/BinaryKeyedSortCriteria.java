@@ -0,0 +1,21 @@
+package com.ning.fsp.sorting;
+
+/**
+ * A sort criteria whose keys can be encoded as byte arrays that compare like the keys when compared
+ * as unsigned bytes, lexicographically, with shorter arrays first. Together with
+ * {@link LongKeyedSortCriteria}, this allows the sorter to build normalized keys for compound sorts.
+ *
+ * @param <T> Type of the sorted objects.
+ * @param <K> Type of the sort key.
+ */
+public interface BinaryKeyedSortCriteria<T, K> extends KeyedSortCriteria<T, K>
+{
+    /**
+     * Encodes a non-null key. The order of the encoded keys must be the order defined by
+     * {@link #getKeyComparator()}.
+     *
+     * @param key The sort key, never null.
+     * @return The binary key.
+     */
+    byte[] getBinaryKey(K key);
+}
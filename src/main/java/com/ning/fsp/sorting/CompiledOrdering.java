@@ -0,0 +1,95 @@
+package com.ning.fsp.sorting;
+
+import java.util.Comparator;
+import java.util.List;
+
+import com.google.common.collect.Ordering;
+import com.ning.fsp.util.Adapter;
+
+/**
+ * A flat compound ordering over a list of sort criterias. Instead of chaining the orderings of
+ * the criterias (each wrapped for null handling and reversal), this ordering loops over arrays of
+ * key adapters, key comparators and direction flags. It is built once per sorter and reused for
+ * every sort.
+ *
+ * Criterias that do not expose their keys or whose keys are derived are compared through their own
+ * ordering.
+ *
+ * @param <T> Type of the sorted objects.
+ */
+public final class CompiledOrdering<T> extends Ordering<T>
+{
+    private final Adapter<T, Object>[] adapters;
+    private final Comparator<Object>[] comparators;
+    private final Ordering<T>[] orderings;
+    private final boolean[] descending;
+    private final boolean nullElementsFirst;
+
+    @SuppressWarnings("unchecked")
+    public CompiledOrdering(final List<SortCriteria<T>> criterias)
+    {
+        final int size = criterias.size();
+
+        this.adapters = (Adapter<T, Object>[]) new Adapter<?, ?>[size];
+        this.comparators = (Comparator<Object>[]) new Comparator<?>[size];
+        this.orderings = (Ordering<T>[]) new Ordering<?>[size];
+        this.descending = new boolean[size];
+        this.nullElementsFirst = SortKeyTable.isNullElementFirst(criterias);
+
+        for (int i = 0; i < size; i++) {
+            final SortCriteria<T> criteria = criterias.get(i);
+            // Derived keys are too costly to compute on every comparison.
+            if (criteria instanceof KeyedSortCriteria && !(criteria instanceof DerivedKeySortCriteria)) {
+                final KeyedSortCriteria<T, Object> keyedCriteria = (KeyedSortCriteria<T, Object>) criteria;
+                adapters[i] = keyedCriteria.getKeyAdapter();
+                comparators[i] = keyedCriteria.getKeyComparator();
+            }
+            else {
+                orderings[i] = criteria.getOrdering();
+            }
+            descending[i] = criteria.isDescending();
+        }
+    }
+
+    @Override
+    public int compare(final T left, final T right)
+    {
+        if (descending.length == 0 || left == right) {
+            return 0;
+        }
+        // Null elements are placed by the first criteria, all criterias consider two null elements equal.
+        if (left == null) {
+            return nullElementsFirst ? -1 : 1;
+        }
+        if (right == null) {
+            return nullElementsFirst ? 1 : -1;
+        }
+
+        for (int i = 0; i < descending.length; i++) {
+            final int result;
+
+            if (adapters[i] != null) {
+                final Object leftKey = adapters[i].getValue(left);
+                final Object rightKey = adapters[i].getValue(right);
+
+                if (leftKey == null) {
+                    result = (rightKey == null) ? 0 : -1;
+                }
+                else if (rightKey == null) {
+                    result = 1;
+                }
+                else {
+                    result = comparators[i].compare(leftKey, rightKey);
+                }
+            }
+            else {
+                result = orderings[i].compare(left, right);
+            }
+
+            if (result != 0) {
+                return descending[i] ? (result < 0 ? 1 : -1) : result;
+            }
+        }
+        return 0;
+    }
+}
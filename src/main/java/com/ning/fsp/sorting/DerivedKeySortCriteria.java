@@ -0,0 +1,14 @@
+package com.ning.fsp.sorting;
+
+/**
+ * A keyed sort criteria whose keys are derived from the element values by a costly transformation,
+ * e.g. collation keys or case folded strings. The sorter always extracts these keys once per element
+ * before sorting. Comparisons outside of a full sort (top-k selection, merging) use the ordering of
+ * the criteria instead of deriving the keys again for every comparison.
+ *
+ * @param <T> Type of the sorted objects.
+ * @param <K> Type of the sort key.
+ */
+public interface DerivedKeySortCriteria<T, K> extends KeyedSortCriteria<T, K>
+{
+}
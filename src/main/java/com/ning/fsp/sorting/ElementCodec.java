@@ -0,0 +1,24 @@
+package com.ning.fsp.sorting;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes and reads elements to and from a binary stream. Used by the external sort to spill
+ * sorted runs to disk.
+ *
+ * @param <T> Type of the encoded objects.
+ */
+public interface ElementCodec<T>
+{
+    /**
+     * Writes a non-null element to the output.
+     */
+    void write(T element, DataOutput out) throws IOException;
+
+    /**
+     * Reads an element written by {@link #write(Object, DataOutput)} from the input.
+     */
+    T read(DataInput in) throws IOException;
+}
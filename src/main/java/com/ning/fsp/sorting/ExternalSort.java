@@ -0,0 +1,388 @@
+package com.ning.fsp.sorting;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+
+/**
+ * External merge sort. The elements are read in runs of at most <code>maxElementsInMemory</code>
+ * elements; every run is sorted in memory and spilled to a temporary file. The result is an
+ * iterable that lazily merges the spilled runs, so at no time more than one run plus one element
+ * per run is held on the heap.
+ *
+ * At most <code>maxFanIn</code> runs are merged at once, so that the number of open files stays
+ * bounded. If more runs are spilled, groups of runs are merged into longer runs first, in as many
+ * passes as needed.
+ *
+ * If all elements fit into a single run, nothing is spilled and the sorted run is kept in memory.
+ *
+ * @param <T> Type of the sorted objects.
+ */
+public class ExternalSort<T>
+{
+    /** By default at most 64 runs are open at once. */
+    public static final int DEFAULT_MAX_FAN_IN = 64;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Comparator<? super T> comparator;
+    private final Function<List<T>, List<T>> runSorter;
+    private final ElementCodec<T> codec;
+    private final int maxElementsInMemory;
+    private final int maxFanIn;
+    private final File tempDirectory;
+
+    /**
+     * @param comparator The comparator used to merge the runs.
+     * @param runSorter Sorts a single run in memory. Must sort stable and consistent with the comparator.
+     * @param codec Writes and reads the elements of the spilled runs.
+     * @param maxElementsInMemory The maximum number of elements in a run.
+     * @param tempDirectory The directory for the spilled runs. If null, the default temporary directory is used.
+     */
+    public ExternalSort(final Comparator<? super T> comparator,
+                        final Function<List<T>, List<T>> runSorter,
+                        final ElementCodec<T> codec,
+                        final int maxElementsInMemory,
+                        final File tempDirectory)
+    {
+        this(comparator, runSorter, codec, maxElementsInMemory, DEFAULT_MAX_FAN_IN, tempDirectory);
+    }
+
+    /**
+     * @param maxFanIn The maximum number of runs that are merged at once, at least 2.
+     */
+    public ExternalSort(final Comparator<? super T> comparator,
+                        final Function<List<T>, List<T>> runSorter,
+                        final ElementCodec<T> codec,
+                        final int maxElementsInMemory,
+                        final int maxFanIn,
+                        final File tempDirectory)
+    {
+        if (maxElementsInMemory < 1) {
+            throw new IllegalArgumentException("maxElementsInMemory must be at least 1!");
+        }
+        if (maxFanIn < 2) {
+            throw new IllegalArgumentException("maxFanIn must be at least 2!");
+        }
+        this.comparator = comparator;
+        this.runSorter = runSorter;
+        this.codec = codec;
+        this.maxElementsInMemory = maxElementsInMemory;
+        this.maxFanIn = maxFanIn;
+        this.tempDirectory = tempDirectory;
+    }
+
+    /**
+     * Sorts the elements.
+     *
+     * @param elements The elements to sort.
+     * @return The sorted elements. This must be closed after use to delete the spilled runs.
+     */
+    public SpilledRuns<T> sort(final Iterable<T> elements)
+    {
+        List<Run> runs = Lists.newArrayList();
+        final Iterator<T> it = elements.iterator();
+
+        boolean done = false;
+        try {
+            while (it.hasNext()) {
+                final List<T> run = Lists.newArrayList();
+                while (it.hasNext() && run.size() < maxElementsInMemory) {
+                    run.add(it.next());
+                }
+
+                final List<T> sortedRun = runSorter.apply(run);
+
+                // Everything fit in memory, no need to spill.
+                if (runs.isEmpty() && !it.hasNext()) {
+                    done = true;
+                    return new SpilledRuns<T>(comparator, codec, Collections.<Run>emptyList(), sortedRun);
+                }
+                runs.add(spill(sortedRun));
+            }
+
+            while (runs.size() > maxFanIn) {
+                runs = mergePass(runs);
+            }
+            done = true;
+        }
+        catch (IOException ioe) {
+            throw new IllegalStateException("Could not spill sort run to disk!", ioe);
+        }
+        finally {
+            // Also if the comparator, the run sorter or the codec failed.
+            if (!done) {
+                for (Run run : runs) {
+                    run.delete();
+                }
+            }
+        }
+
+        return new SpilledRuns<T>(comparator, codec, runs, runs.isEmpty() ? Collections.<T>emptyList() : null);
+    }
+
+    /**
+     * Merges consecutive groups of <code>maxFanIn</code> runs into one run each. Merging neighbours keeps the sort stable.
+     * The merged runs are deleted; if the pass fails, the runs that were merged already are deleted as well.
+     */
+    private List<Run> mergePass(final List<Run> runs) throws IOException
+    {
+        final List<Run> merged = Lists.newArrayList();
+
+        boolean done = false;
+        try {
+            for (int from = 0; from < runs.size(); from += maxFanIn) {
+                final List<Run> group = runs.subList(from, Math.min(from + maxFanIn, runs.size()));
+                if (group.size() == 1) {
+                    merged.add(group.get(0));
+                    continue;
+                }
+
+                final List<RunIterator<T>> runIterators = Lists.newArrayList();
+                try {
+                    int size = 0;
+                    for (Run run : group) {
+                        runIterators.add(new RunIterator<T>(run, codec, null));
+                        size += run.size;
+                    }
+                    merged.add(spill(new MergingIterator<T>(runIterators, comparator), size));
+                }
+                finally {
+                    closeQuietly(runIterators);
+                }
+                for (Run run : group) {
+                    run.delete();
+                }
+            }
+            done = true;
+        }
+        finally {
+            if (!done) {
+                for (Run run : merged) {
+                    run.delete();
+                }
+            }
+        }
+        return merged;
+    }
+
+    private Run spill(final List<T> sortedRun) throws IOException
+    {
+        return spill(sortedRun.iterator(), sortedRun.size());
+    }
+
+    private Run spill(final Iterator<T> sortedElements, final int size) throws IOException
+    {
+        final File file = File.createTempFile("fsp-sort-", ".run", tempDirectory);
+
+        boolean written = false;
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+            try {
+                while (sortedElements.hasNext()) {
+                    final T element = sortedElements.next();
+                    // Nulls are flagged so that the codec never sees them.
+                    out.writeBoolean(element != null);
+                    if (element != null) {
+                        codec.write(element, out);
+                    }
+                }
+            }
+            finally {
+                out.close();
+            }
+            written = true;
+        }
+        finally {
+            // The run is not known to the caller yet, so nobody else would delete a partial file.
+            if (!written) {
+                file.delete();
+            }
+        }
+        return new Run(file, size);
+    }
+
+    private static void closeQuietly(final List<? extends RunIterator<?>> iterators)
+    {
+        for (RunIterator<?> iterator : iterators) {
+            try {
+                iterator.close();
+            }
+            catch (IOException ioe) {
+                // Nothing we can do about it.
+            }
+        }
+    }
+
+    private static final class Run
+    {
+        private final File file;
+        private final int size;
+
+        private Run(final File file, final int size)
+        {
+            this.file = file;
+            this.size = size;
+        }
+
+        private void delete()
+        {
+            file.delete();
+        }
+    }
+
+    private static final class RunIterator<T> implements Iterator<T>, Closeable
+    {
+        private final DataInputStream in;
+        private final ElementCodec<T> codec;
+        private final SpilledRuns<T> owner;
+        private int remaining;
+
+        /**
+         * @param owner The result that tracks this iterator while it is open, or null.
+         */
+        private RunIterator(final Run run, final ElementCodec<T> codec, final SpilledRuns<T> owner) throws IOException
+        {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run.file), BUFFER_SIZE));
+            this.codec = codec;
+            this.owner = owner;
+            this.remaining = run.size;
+
+            if (remaining == 0) {
+                close();
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return remaining > 0;
+        }
+
+        @Override
+        public T next()
+        {
+            if (remaining == 0) {
+                throw new NoSuchElementException();
+            }
+            try {
+                final T element = in.readBoolean() ? codec.read(in) : null;
+                if (--remaining == 0) {
+                    close();
+                }
+                return element;
+            }
+            catch (IOException ioe) {
+                throw new IllegalStateException("Could not read spilled sort run!", ioe);
+            }
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            remaining = 0;
+            in.close();
+            if (owner != null) {
+                owner.release(this);
+            }
+        }
+    }
+
+    /**
+     * The result of an external sort. Every iterator merges the spilled runs anew. Closing the object closes
+     * all open iterators and deletes the spilled runs. If nothing was spilled, the sorted elements are kept
+     * in memory and closing does nothing.
+     *
+     * @param <T> Type of the sorted objects.
+     */
+    public static final class SpilledRuns<T> implements Iterable<T>, Closeable
+    {
+        private final Comparator<? super T> comparator;
+        private final ElementCodec<T> codec;
+        private final List<Run> runs;
+        private final List<T> sortedRun;
+
+        // Iterators that did not reach the end of their run yet.
+        private final List<RunIterator<T>> openIterators = Lists.newArrayList();
+
+        /**
+         * @param runs The spilled runs.
+         * @param sortedRun The sorted elements if nothing was spilled, otherwise null.
+         */
+        private SpilledRuns(final Comparator<? super T> comparator, final ElementCodec<T> codec, final List<Run> runs, final List<T> sortedRun)
+        {
+            this.comparator = comparator;
+            this.codec = codec;
+            this.runs = runs;
+            this.sortedRun = (sortedRun == null) ? null : Collections.unmodifiableList(sortedRun);
+        }
+
+        @Override
+        public synchronized Iterator<T> iterator()
+        {
+            if (sortedRun != null) {
+                return sortedRun.iterator();
+            }
+
+            final List<RunIterator<T>> runIterators = Lists.newArrayList();
+            try {
+                for (Run run : runs) {
+                    final RunIterator<T> runIterator = new RunIterator<T>(run, codec, this);
+                    runIterators.add(runIterator);
+                    if (runIterator.hasNext()) {
+                        openIterators.add(runIterator);
+                    }
+                }
+            }
+            catch (IOException ioe) {
+                closeQuietly(runIterators);
+                throw new IllegalStateException("Could not open spilled sort run!", ioe);
+            }
+
+            return new MergingIterator<T>(runIterators, comparator);
+        }
+
+        /**
+         * Returns the number of runs that were spilled to disk and are merged by the iterators.
+         */
+        public int getRunCount()
+        {
+            return runs.size();
+        }
+
+        @Override
+        public synchronized void close()
+        {
+            closeQuietly(Lists.newArrayList(openIterators));
+            openIterators.clear();
+            for (Run run : runs) {
+                run.delete();
+            }
+        }
+
+        private synchronized void release(final RunIterator<T> iterator)
+        {
+            openIterators.remove(iterator);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.ning.fsp.sorting;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.ning.fsp.util.Adapter;
+
+/**
+ * Selects the first <i>limit</i> elements of every group of a stream in a single pass. Every group
+ * keeps a bounded heap ({@link TopSelector}), so this costs O(n log limit) time and
+ * O(groups * limit) memory.
+ *
+ * The result is the same as sorting the whole stream stably and then keeping the first
+ * <i>limit</i> elements of each group.
+ *
+ * @param <T> Type of the selected elements.
+ * @param <K> Type of the group key.
+ */
+public class GroupedTopSelector<T, K>
+{
+    private final Comparator<Entry<T>> entryComparator;
+    private final Adapter<T, K> groupAdapter;
+    private final int limit;
+
+    private final Map<K, TopSelector<Entry<T>>> groups = Maps.newLinkedHashMap();
+    private long sequence = 0;
+
+    public GroupedTopSelector(final Comparator<? super T> comparator, final Adapter<T, K> groupAdapter, final int limit)
+    {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative!");
+        }
+        this.groupAdapter = groupAdapter;
+        this.limit = limit;
+        this.entryComparator = new Comparator<Entry<T>>() {
+            @Override
+            public int compare(final Entry<T> left, final Entry<T> right)
+            {
+                final int result = comparator.compare(left.element, right.element);
+                return result != 0 ? result : (left.sequence < right.sequence ? -1 : (left.sequence == right.sequence ? 0 : 1));
+            }
+        };
+    }
+
+    public void offer(final T element)
+    {
+        // Null elements have no group key, they form their own group.
+        final K group = (element == null) ? null : groupAdapter.getValue(element);
+
+        TopSelector<Entry<T>> selector = groups.get(group);
+        if (selector == null) {
+            selector = new TopSelector<Entry<T>>(entryComparator, limit);
+            groups.put(group, selector);
+        }
+        selector.offer(new Entry<T>(element, sequence++));
+    }
+
+    public void offerAll(final Iterable<? extends T> elements)
+    {
+        for (T element : elements) {
+            offer(element);
+        }
+    }
+
+    /**
+     * Returns the selected elements of every group in sort order. The groups are returned in the
+     * order in which they first appeared in the stream.
+     */
+    public Map<K, List<T>> toGroups()
+    {
+        final Map<K, List<T>> result = Maps.newLinkedHashMap();
+        for (Map.Entry<K, TopSelector<Entry<T>>> group : groups.entrySet()) {
+            result.put(group.getKey(), toElements(group.getValue().toSortedList()));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the selected elements of all groups in a single list in sort order.
+     */
+    public List<T> toSortedList()
+    {
+        final List<Entry<T>> entries = Lists.newArrayList();
+        for (TopSelector<Entry<T>> selector : groups.values()) {
+            entries.addAll(selector.toSortedList());
+        }
+        Collections.sort(entries, entryComparator);
+        return toElements(entries);
+    }
+
+    private List<T> toElements(final List<Entry<T>> entries)
+    {
+        final List<T> elements = Lists.newArrayListWithCapacity(entries.size());
+        for (Entry<T> entry : entries) {
+            elements.add(entry.element);
+        }
+        return elements;
+    }
+
+    private static final class Entry<T>
+    {
+        private final T element;
+        private final long sequence;
+
+        private Entry(final T element, final long sequence)
+        {
+            this.element = element;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.ning.fsp.sorting;
+
+/**
+ * Compares two elements by their position in a key table.
+ */
+public interface IndexComparator
+{
+    int compare(int left, int right);
+}
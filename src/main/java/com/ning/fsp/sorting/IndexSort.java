@@ -0,0 +1,110 @@
+package com.ning.fsp.sorting;
+
+/**
+ * Stable sorting of index permutations. Sorting positions instead of the elements lets the sorters
+ * compare on columns of precomputed keys.
+ */
+public final class IndexSort
+{
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private IndexSort() {
+    }
+
+    /**
+     * Returns the identity permutation <code>0 .. size - 1</code>.
+     */
+    public static int[] identity(final int size)
+    {
+        final int[] indexes = new int[size];
+        for (int i = 0; i < size; i++) {
+            indexes[i] = i;
+        }
+        return indexes;
+    }
+
+    /**
+     * Sorts the given index permutation. The sort is a stable merge sort.
+     */
+    public static void sort(final int[] indexes, final IndexComparator comparator)
+    {
+        sort(indexes, 0, indexes.length, comparator);
+    }
+
+    /**
+     * Sorts the range <code>from .. to - 1</code> of the given index permutation.
+     */
+    public static void sort(final int[] indexes, final int from, final int to, final IndexComparator comparator)
+    {
+        final int[] buffer = new int[to - from];
+        mergeSort(indexes, buffer, from, from, to, comparator);
+    }
+
+    /**
+     * Merges the two sorted ranges <code>from .. middle - 1</code> and <code>middle .. to - 1</code>
+     * of the source array into the target array, starting at <code>from</code>.
+     */
+    public static void merge(final int[] source, final int[] target, final int from, final int middle, final int to, final IndexComparator comparator)
+    {
+        int left = from;
+        int right = middle;
+
+        for (int i = from; i < to; i++) {
+            // Take from the left run on ties to keep the sort stable.
+            if (right >= to || (left < middle && comparator.compare(source[left], source[right]) <= 0)) {
+                target[i] = source[left++];
+            }
+            else {
+                target[i] = source[right++];
+            }
+        }
+    }
+
+    private static void mergeSort(final int[] indexes, final int[] buffer, final int base, final int from, final int to, final IndexComparator comparator)
+    {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            insertionSort(indexes, from, to, comparator);
+            return;
+        }
+
+        final int middle = (from + to) >>> 1;
+        mergeSort(indexes, buffer, base, from, middle, comparator);
+        mergeSort(indexes, buffer, base, middle, to, comparator);
+
+        // Already in order, nothing to merge.
+        if (comparator.compare(indexes[middle - 1], indexes[middle]) <= 0) {
+            return;
+        }
+
+        System.arraycopy(indexes, from, buffer, from - base, to - from);
+        mergeFromBuffer(buffer, indexes, from - base, middle - base, to - base, from, comparator);
+    }
+
+    private static void mergeFromBuffer(final int[] buffer, final int[] indexes, final int from, final int middle, final int to, final int target, final IndexComparator comparator)
+    {
+        int left = from;
+        int right = middle;
+
+        for (int i = target; left < middle || right < to; i++) {
+            if (right >= to || (left < middle && comparator.compare(buffer[left], buffer[right]) <= 0)) {
+                indexes[i] = buffer[left++];
+            }
+            else {
+                indexes[i] = buffer[right++];
+            }
+        }
+    }
+
+    private static void insertionSort(final int[] indexes, final int from, final int to, final IndexComparator comparator)
+    {
+        for (int i = from + 1; i < to; i++) {
+            final int index = indexes[i];
+            int j = i - 1;
+            while (j >= from && comparator.compare(indexes[j], index) > 0) {
+                indexes[j + 1] = indexes[j];
+                j--;
+            }
+            indexes[j + 1] = index;
+        }
+    }
+}
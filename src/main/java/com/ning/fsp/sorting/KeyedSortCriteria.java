@@ -0,0 +1,32 @@
+package com.ning.fsp.sorting;
+
+import java.util.Comparator;
+
+import com.ning.fsp.util.Adapter;
+
+/**
+ * A sort criteria that exposes the sort key of an element. This allows the sorter to extract
+ * each key once per element and sort on the extracted keys instead of calling the adapter on
+ * both sides of every comparison.
+ *
+ * @param <T> Type of the sorted objects.
+ * @param <K> Type of the sort key.
+ */
+public interface KeyedSortCriteria<T, K> extends SortCriteria<T>
+{
+    /**
+     * Returns the adapter that extracts the sort key from an element. The adapter is never
+     * called for null elements but may return null keys.
+     *
+     * @return An adapter returning the sort key.
+     */
+    Adapter<T, K> getKeyAdapter();
+
+    /**
+     * Returns a comparator for non-null keys in ascending order. Null keys and the sort direction
+     * are handled by the sorter.
+     *
+     * @return A comparator for the sort keys.
+     */
+    Comparator<? super K> getKeyComparator();
+}
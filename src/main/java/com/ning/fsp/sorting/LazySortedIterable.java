@@ -0,0 +1,102 @@
+package com.ning.fsp.sorting;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.google.common.collect.Iterables;
+
+/**
+ * A sorted view of a list of elements that only sorts as far as it is consumed. Every iterator
+ * builds a binary heap over the elements in O(n) and pops the next smallest element on demand in
+ * O(log n), so reading the first k elements costs O(n + k log n) instead of a full sort.
+ *
+ * The order is stable: equal elements are returned in their original order.
+ *
+ * @param <T> Type of the sorted objects.
+ */
+public class LazySortedIterable<T> implements Iterable<T>
+{
+    private final Object[] elements;
+    private final Comparator<? super T> comparator;
+
+    public LazySortedIterable(final Iterable<? extends T> elements, final Comparator<? super T> comparator)
+    {
+        this.elements = Iterables.toArray(elements, Object.class);
+        this.comparator = comparator;
+    }
+
+    @Override
+    public Iterator<T> iterator()
+    {
+        return new HeapIterator();
+    }
+
+    private final class HeapIterator implements Iterator<T>
+    {
+        // Heap of element positions, the position breaks ties between equal elements.
+        private final int[] heap;
+        private int size;
+
+        private HeapIterator()
+        {
+            heap = IndexSort.identity(elements.length);
+            size = heap.length;
+
+            for (int i = (size >>> 1) - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return size > 0;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next()
+        {
+            if (size == 0) {
+                throw new NoSuchElementException();
+            }
+            final T result = (T) elements[heap[0]];
+            heap[0] = heap[--size];
+            siftDown(0);
+            return result;
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        private void siftDown(int index)
+        {
+            while (true) {
+                final int left = 2 * index + 1;
+                if (left >= size) {
+                    break;
+                }
+                final int right = left + 1;
+                final int smallest = (right < size && compare(heap[right], heap[left]) < 0) ? right : left;
+                if (compare(heap[smallest], heap[index]) >= 0) {
+                    break;
+                }
+                final int position = heap[index];
+                heap[index] = heap[smallest];
+                heap[smallest] = position;
+                index = smallest;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private int compare(final int left, final int right)
+        {
+            final int result = comparator.compare((T) elements[left], (T) elements[right]);
+            return result != 0 ? result : (left < right ? -1 : (left == right ? 0 : 1));
+        }
+    }
+}
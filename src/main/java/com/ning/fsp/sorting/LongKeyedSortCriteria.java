@@ -0,0 +1,21 @@
+package com.ning.fsp.sorting;
+
+/**
+ * A sort criteria whose keys map to primitive long values, e.g. ids or the epoch millis of a date.
+ * The sorter sorts these criterias on a column of long values without boxing the keys and without
+ * calling a comparator.
+ *
+ * @param <T> Type of the sorted objects.
+ * @param <K> Type of the sort key.
+ */
+public interface LongKeyedSortCriteria<T, K> extends KeyedSortCriteria<T, K>
+{
+    /**
+     * Converts a non-null key into a long value. The conversion must preserve the order of the keys
+     * as defined by {@link #getKeyComparator()}.
+     *
+     * @param key The sort key, never null.
+     * @return The long value of the key.
+     */
+    long getLongKey(K key);
+}
@@ -0,0 +1,74 @@
+package com.ning.fsp.sorting;
+
+/**
+ * Stable sorting of an index permutation by a column of primitive long keys. This is the
+ * specialized variant of {@link IndexSort} for single long keys and does not need a comparator.
+ */
+public final class LongSort
+{
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private LongSort() {
+    }
+
+    /**
+     * Sorts the keys in ascending order and applies the same permutation to the indexes.
+     *
+     * @param keys The sort keys.
+     * @param indexes The indexes belonging to the keys, same length as the keys.
+     */
+    public static void sort(final long[] keys, final int[] indexes)
+    {
+        final long[] keyBuffer = new long[keys.length];
+        final int[] indexBuffer = new int[indexes.length];
+        mergeSort(keys, indexes, keyBuffer, indexBuffer, 0, keys.length);
+    }
+
+    private static void mergeSort(final long[] keys, final int[] indexes, final long[] keyBuffer, final int[] indexBuffer, final int from, final int to)
+    {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            insertionSort(keys, indexes, from, to);
+            return;
+        }
+
+        final int middle = (from + to) >>> 1;
+        mergeSort(keys, indexes, keyBuffer, indexBuffer, from, middle);
+        mergeSort(keys, indexes, keyBuffer, indexBuffer, middle, to);
+
+        if (keys[middle - 1] <= keys[middle]) {
+            return;
+        }
+
+        System.arraycopy(keys, from, keyBuffer, from, to - from);
+        System.arraycopy(indexes, from, indexBuffer, from, to - from);
+
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && keyBuffer[left] <= keyBuffer[right])) {
+                keys[i] = keyBuffer[left];
+                indexes[i] = indexBuffer[left++];
+            }
+            else {
+                keys[i] = keyBuffer[right];
+                indexes[i] = indexBuffer[right++];
+            }
+        }
+    }
+
+    private static void insertionSort(final long[] keys, final int[] indexes, final int from, final int to)
+    {
+        for (int i = from + 1; i < to; i++) {
+            final long key = keys[i];
+            final int index = indexes[i];
+            int j = i - 1;
+            while (j >= from && keys[j] > key) {
+                keys[j + 1] = keys[j];
+                indexes[j + 1] = indexes[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            indexes[j + 1] = index;
+        }
+    }
+}
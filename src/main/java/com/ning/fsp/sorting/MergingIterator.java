@@ -0,0 +1,123 @@
+package com.ning.fsp.sorting;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Merges a number of sorted iterators into a single sorted iterator. The heads of the iterators are
+ * kept in a binary min-heap, so merging n elements from k iterators costs O(n log k) and only
+ * k elements are held at any time.
+ *
+ * The merge is stable: equal elements are returned in the order of their iterators, and in the
+ * order of each iterator.
+ *
+ * @param <T> Type of the merged objects.
+ */
+public class MergingIterator<T> implements Iterator<T>
+{
+    private final Comparator<? super T> comparator;
+    private final Iterator<? extends T>[] sources;
+
+    // Heap of source positions, ordered by the current head of each source.
+    private final int[] heap;
+    private final Object[] heads;
+    private int size = 0;
+
+    @SuppressWarnings("unchecked")
+    public MergingIterator(final List<? extends Iterator<? extends T>> sources, final Comparator<? super T> comparator)
+    {
+        this.comparator = comparator;
+        this.sources = (Iterator<? extends T>[]) sources.toArray(new Iterator<?>[sources.size()]);
+        this.heap = new int[this.sources.length];
+        this.heads = new Object[this.sources.length];
+
+        for (int i = 0; i < this.sources.length; i++) {
+            if (this.sources[i].hasNext()) {
+                heads[i] = this.sources[i].next();
+                heap[size] = i;
+                siftUp(size++);
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        return size > 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next()
+    {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+
+        final int source = heap[0];
+        final T result = (T) heads[source];
+
+        if (sources[source].hasNext()) {
+            heads[source] = sources[source].next();
+        }
+        else {
+            heads[source] = null;
+            heap[0] = heap[--size];
+        }
+        siftDown(0);
+
+        return result;
+    }
+
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    private void siftUp(int index)
+    {
+        while (index > 0) {
+            final int parent = (index - 1) >>> 1;
+            if (compare(heap[index], heap[parent]) >= 0) {
+                break;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index)
+    {
+        while (true) {
+            final int left = 2 * index + 1;
+            if (left >= size) {
+                break;
+            }
+            final int right = left + 1;
+            final int smallest = (right < size && compare(heap[right], heap[left]) < 0) ? right : left;
+            if (compare(heap[smallest], heap[index]) >= 0) {
+                break;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(final int left, final int right)
+    {
+        final int result = comparator.compare((T) heads[left], (T) heads[right]);
+        // Ties go to the earlier source to keep the merge stable.
+        return result != 0 ? result : (left < right ? -1 : (left == right ? 0 : 1));
+    }
+
+    private void swap(final int left, final int right)
+    {
+        final int source = heap[left];
+        heap[left] = heap[right];
+        heap[right] = source;
+    }
+}
@@ -0,0 +1,257 @@
+package com.ning.fsp.sorting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import com.google.common.collect.Lists;
+import com.ning.fsp.util.Adapter;
+
+/**
+ * Holds one normalized binary key per element. The keys of all criterias are encoded into a single
+ * byte array that compares like the compound sort when compared as unsigned bytes: each criteria
+ * writes a null flag followed by its order preserving key, and descending criterias complement
+ * their bytes. The first eight bytes of every key are also kept as a long prefix, so most
+ * comparisons are a single long comparison.
+ *
+ * Variable length (binary) keys escape 0x00 as 0x00 0xFF and are terminated by 0x00 0x00, so that
+ * no encoded key is a prefix of another one.
+ *
+ * @param <T> Type of the sorted objects.
+ */
+public class NormalizedKeyTable<T> implements IndexComparator
+{
+    private static final int PREFIX_BYTES = 8;
+
+    private final List<T> elements;
+    private final int nullCount;
+    private final boolean nullElementsFirst;
+
+    private final byte[][] keys;
+    private final long[] prefixes;
+
+    /**
+     * Returns true if all criterias can encode their keys as normalized keys.
+     */
+    public static <T> boolean isSupported(final List<SortCriteria<T>> criterias)
+    {
+        for (SortCriteria<T> criteria : criterias) {
+            if (!(criteria instanceof LongKeyedSortCriteria) && !(criteria instanceof BinaryKeyedSortCriteria)) {
+                return false;
+            }
+        }
+        return !criterias.isEmpty();
+    }
+
+    @SuppressWarnings("unchecked")
+    public NormalizedKeyTable(final List<SortCriteria<T>> criterias, final Iterable<T> elements)
+    {
+        this.elements = (elements instanceof Collection) ? new ArrayList<T>(((Collection<T>) elements).size()) : Lists.<T>newArrayList();
+
+        int nulls = 0;
+        for (T element : elements) {
+            if (element == null) {
+                nulls++;
+            }
+            else {
+                this.elements.add(element);
+            }
+        }
+        this.nullCount = nulls;
+        this.nullElementsFirst = SortKeyTable.isNullElementFirst(criterias);
+
+        final int size = this.elements.size();
+        final int columns = criterias.size();
+
+        final Adapter<T, Object>[] adapters = (Adapter<T, Object>[]) new Adapter<?, ?>[columns];
+        for (int i = 0; i < columns; i++) {
+            adapters[i] = ((KeyedSortCriteria<T, Object>) criterias.get(i)).getKeyAdapter();
+        }
+
+        this.keys = new byte[size][];
+        this.prefixes = new long[size];
+
+        final KeyBuffer buffer = new KeyBuffer();
+        for (int j = 0; j < size; j++) {
+            final T element = this.elements.get(j);
+            buffer.clear();
+
+            for (int i = 0; i < columns; i++) {
+                final SortCriteria<T> criteria = criterias.get(i);
+                final Object key = adapters[i].getValue(element);
+                final int start = buffer.length();
+
+                // Null keys are smaller than all other keys.
+                if (key == null) {
+                    buffer.put((byte) 0x00);
+                }
+                else {
+                    buffer.put((byte) 0x01);
+                    if (criteria instanceof LongKeyedSortCriteria) {
+                        buffer.putLong(RadixSort.toUnsigned(((LongKeyedSortCriteria<T, Object>) criteria).getLongKey(key)));
+                    }
+                    else {
+                        buffer.putEscaped(((BinaryKeyedSortCriteria<T, Object>) criteria).getBinaryKey(key));
+                    }
+                }
+                if (criteria.isDescending()) {
+                    buffer.complement(start);
+                }
+            }
+
+            keys[j] = buffer.toArray();
+            prefixes[j] = getPrefix(keys[j]);
+        }
+    }
+
+    /**
+     * Returns the number of keyed (non-null) elements.
+     */
+    public int size()
+    {
+        return elements.size();
+    }
+
+    /**
+     * Sorts the keyed elements.
+     *
+     * @return A permutation of <code>0 .. size() - 1</code> in sort order.
+     */
+    public int[] sort()
+    {
+        final int[] indexes = IndexSort.identity(size());
+        IndexSort.sort(indexes, this);
+        return indexes;
+    }
+
+    /**
+     * Sorts the keyed elements with a parallel merge sort.
+     *
+     * @param executor The executor that runs the sort tasks.
+     * @param parallelism The number of runs to sort concurrently.
+     * @return A permutation of <code>0 .. size() - 1</code> in sort order.
+     */
+    public int[] sort(final ExecutorService executor, final int parallelism)
+    {
+        final int[] indexes = IndexSort.identity(size());
+        ParallelSort.sort(indexes, this, executor, parallelism);
+        return indexes;
+    }
+
+    @Override
+    public int compare(final int left, final int right)
+    {
+        // The prefixes are stored with a flipped sign bit, so a signed compare is an unsigned compare of the bytes.
+        final long leftPrefix = prefixes[left];
+        final long rightPrefix = prefixes[right];
+        if (leftPrefix != rightPrefix) {
+            return leftPrefix < rightPrefix ? -1 : 1;
+        }
+
+        final byte[] leftKey = keys[left];
+        final byte[] rightKey = keys[right];
+        final int length = Math.min(leftKey.length, rightKey.length);
+
+        for (int i = PREFIX_BYTES; i < length; i++) {
+            if (leftKey[i] != rightKey[i]) {
+                return (leftKey[i] & 0xFF) < (rightKey[i] & 0xFF) ? -1 : 1;
+            }
+        }
+        return leftKey.length < rightKey.length ? -1 : (leftKey.length == rightKey.length ? 0 : 1);
+    }
+
+    /**
+     * Maps a sorted index permutation back to the elements.
+     *
+     * @param indexes A permutation of <code>0 .. size() - 1</code>.
+     * @return The elements in the order given by the permutation, with the null elements in place.
+     */
+    public List<T> toList(final int[] indexes)
+    {
+        final List<T> result = new ArrayList<T>(indexes.length + nullCount);
+
+        if (nullElementsFirst) {
+            addNulls(result);
+        }
+        for (int index : indexes) {
+            result.add(elements.get(index));
+        }
+        if (!nullElementsFirst) {
+            addNulls(result);
+        }
+        return result;
+    }
+
+    private void addNulls(final List<T> result)
+    {
+        for (int i = 0; i < nullCount; i++) {
+            result.add(null);
+        }
+    }
+
+    private static long getPrefix(final byte[] key)
+    {
+        long prefix = 0;
+        for (int i = 0; i < PREFIX_BYTES; i++) {
+            prefix = (prefix << 8) | (i < key.length ? key[i] & 0xFF : 0);
+        }
+        return RadixSort.toUnsigned(prefix);
+    }
+
+    private static final class KeyBuffer
+    {
+        private byte[] bytes = new byte[64];
+        private int length = 0;
+
+        private void clear()
+        {
+            length = 0;
+        }
+
+        private int length()
+        {
+            return length;
+        }
+
+        private void put(final byte value)
+        {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[length++] = value;
+        }
+
+        private void putLong(final long value)
+        {
+            for (int shift = Long.SIZE - 8; shift >= 0; shift -= 8) {
+                put((byte) (value >>> shift));
+            }
+        }
+
+        private void putEscaped(final byte[] value)
+        {
+            for (byte b : value) {
+                put(b);
+                if (b == 0x00) {
+                    put((byte) 0xFF);
+                }
+            }
+            put((byte) 0x00);
+            put((byte) 0x00);
+        }
+
+        private void complement(final int start)
+        {
+            for (int i = start; i < length; i++) {
+                bytes[i] = (byte) ~bytes[i];
+            }
+        }
+
+        private byte[] toArray()
+        {
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+}
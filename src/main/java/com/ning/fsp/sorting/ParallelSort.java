@@ -0,0 +1,115 @@
+package com.ning.fsp.sorting;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Parallel, stable merge sort of index permutations. The permutation is split into one run per
+ * thread, the runs are sorted concurrently and then merged pairwise, again concurrently, until a
+ * single run is left. Runs are only ever merged with their right neighbour and ties are taken from
+ * the left run, so the sort is as stable as {@link IndexSort}.
+ *
+ * All tasks are submitted from the calling thread, so the executor may be a bounded pool.
+ */
+public final class ParallelSort
+{
+    private ParallelSort() {
+    }
+
+    /**
+     * Sorts the given index permutation using the executor.
+     *
+     * @param indexes The index permutation to sort.
+     * @param comparator Compares two indexes. Must be safe to call from multiple threads.
+     * @param executor The executor that runs the sort tasks.
+     * @param parallelism The number of runs to sort concurrently.
+     */
+    public static void sort(final int[] indexes, final IndexComparator comparator, final ExecutorService executor, final int parallelism)
+    {
+        final int runCount = Math.max(1, Math.min(parallelism, indexes.length));
+        if (runCount == 1) {
+            IndexSort.sort(indexes, comparator);
+            return;
+        }
+
+        final int[] bounds = new int[runCount + 1];
+        for (int i = 0; i <= runCount; i++) {
+            bounds[i] = (int) ((long) indexes.length * i / runCount);
+        }
+
+        final List<Future<?>> sortTasks = Lists.newArrayList();
+        for (int i = 0; i < runCount; i++) {
+            final int from = bounds[i];
+            final int to = bounds[i + 1];
+            sortTasks.add(executor.submit(new Runnable() {
+                @Override
+                public void run()
+                {
+                    IndexSort.sort(indexes, from, to, comparator);
+                }
+            }));
+        }
+        await(sortTasks);
+
+        int[] source = indexes;
+        int[] target = new int[indexes.length];
+        int[] runBounds = bounds;
+
+        while (runBounds.length > 2) {
+            final int[] mergeSource = source;
+            final int[] mergeTarget = target;
+            final int runs = runBounds.length - 1;
+            final int[] mergedBounds = new int[(runs + 1) / 2 + 1];
+
+            final List<Future<?>> mergeTasks = Lists.newArrayList();
+            for (int i = 0; i < runs; i += 2) {
+                final int from = runBounds[i];
+                final int middle = runBounds[i + 1];
+                final int to = (i + 2 < runBounds.length) ? runBounds[i + 2] : middle;
+                mergedBounds[i / 2] = from;
+
+                // A trailing run without a neighbour is merged with an empty run, i.e. copied.
+                mergeTasks.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run()
+                    {
+                        IndexSort.merge(mergeSource, mergeTarget, from, middle, to, comparator);
+                    }
+                }));
+            }
+            mergedBounds[mergedBounds.length - 1] = indexes.length;
+            await(mergeTasks);
+
+            source = mergeTarget;
+            target = mergeSource;
+            runBounds = mergedBounds;
+        }
+
+        if (source != indexes) {
+            System.arraycopy(source, 0, indexes, 0, indexes.length);
+        }
+    }
+
+    private static void await(final List<Future<?>> tasks)
+    {
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while sorting!", ie);
+        }
+        catch (ExecutionException ee) {
+            if (ee.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ee.getCause();
+            }
+            throw new IllegalStateException("Parallel sort failed!", ee.getCause());
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.ning.fsp.sorting;
+
+/**
+ * Stable LSD radix sort of (key, index) pairs. The keys are sorted as unsigned 64 bit values, one
+ * byte per pass. Passes in which all keys share the same byte are skipped, so small key ranges
+ * (e.g. dates within a few years) need only a few passes.
+ */
+public final class RadixSort
+{
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+    private static final int PASSES = Long.SIZE / RADIX_BITS;
+
+    private RadixSort() {
+    }
+
+    /**
+     * Maps a signed long to a long whose unsigned order is the signed order of the original value.
+     */
+    public static long toUnsigned(final long value)
+    {
+        return value ^ Long.MIN_VALUE;
+    }
+
+    /**
+     * Sorts the keys as unsigned values in ascending order and applies the same permutation to the indexes.
+     *
+     * @param keys The sort keys.
+     * @param indexes The indexes belonging to the keys, same length as the keys.
+     */
+    public static void sort(final long[] keys, final int[] indexes)
+    {
+        final int size = keys.length;
+        final int[][] counts = new int[PASSES][RADIX];
+
+        // Count all passes in one go.
+        for (int i = 0; i < size; i++) {
+            final long key = keys[i];
+            for (int pass = 0; pass < PASSES; pass++) {
+                counts[pass][(int) (key >>> (pass * RADIX_BITS)) & (RADIX - 1)]++;
+            }
+        }
+
+        long[] sourceKeys = keys;
+        int[] sourceIndexes = indexes;
+        long[] targetKeys = new long[size];
+        int[] targetIndexes = new int[size];
+
+        for (int pass = 0; pass < PASSES; pass++) {
+            final int[] count = counts[pass];
+            final int shift = pass * RADIX_BITS;
+
+            if (isTrivial(count, size)) {
+                continue;
+            }
+
+            // Turn the counts into start offsets.
+            int offset = 0;
+            for (int bucket = 0; bucket < RADIX; bucket++) {
+                final int bucketSize = count[bucket];
+                count[bucket] = offset;
+                offset += bucketSize;
+            }
+
+            for (int i = 0; i < size; i++) {
+                final long key = sourceKeys[i];
+                final int target = count[(int) (key >>> shift) & (RADIX - 1)]++;
+                targetKeys[target] = key;
+                targetIndexes[target] = sourceIndexes[i];
+            }
+
+            final long[] swapKeys = sourceKeys;
+            sourceKeys = targetKeys;
+            targetKeys = swapKeys;
+
+            final int[] swapIndexes = sourceIndexes;
+            sourceIndexes = targetIndexes;
+            targetIndexes = swapIndexes;
+        }
+
+        if (sourceKeys != keys) {
+            System.arraycopy(sourceKeys, 0, keys, 0, size);
+            System.arraycopy(sourceIndexes, 0, indexes, 0, size);
+        }
+    }
+
+    private static boolean isTrivial(final int[] count, final int size)
+    {
+        for (int bucketSize : count) {
+            if (bucketSize != 0) {
+                return bucketSize == size;
+            }
+        }
+        return true;
+    }
+}
@@ -1,5 +1,7 @@
 package com.ning.fsp.sorting;
 
+import java.util.Comparator;
+
 import org.joda.time.DateTime;
 
 import com.google.common.collect.Ordering;
@@ -40,7 +42,7 @@ public class SortDateFactory<T> implements SortCriteriaFactory<T>
     public SortCriteria<T> getCriteria(final SortParameter sortParameter)
     {
 
-        return new SortCriteria<T>() {
+        return new LongKeyedSortCriteria<T, DateTime>() {
 
             public boolean isDescending()
             {
@@ -81,6 +83,21 @@ public class SortDateFactory<T> implements SortCriteriaFactory<T>
 
             }
 
+            public Adapter<T, DateTime> getKeyAdapter()
+            {
+                return dateAdapter;
+            }
+
+            public Comparator<? super DateTime> getKeyComparator()
+            {
+                return Ordering.natural();
+            }
+
+            public long getLongKey(final DateTime key)
+            {
+                return key.getMillis();
+            }
+
             @Override
             public String toString()
             {
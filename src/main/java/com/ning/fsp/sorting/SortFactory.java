@@ -1,5 +1,7 @@
 package com.ning.fsp.sorting;
 
+import java.util.Comparator;
+
 import com.google.common.collect.Ordering;
 import com.ning.fsp.SortParameter;
 import com.ning.fsp.util.Adapter;
@@ -40,7 +42,7 @@ public class SortFactory<T, V extends Comparable<V>> implements SortCriteriaFact
     public SortCriteria<T> getCriteria(final SortParameter sortParameter)
     {
 
-        return new SortCriteria<T>() {
+        return new KeyedSortCriteria<T, V>() {
 
             public boolean isDescending()
             {
@@ -79,6 +81,16 @@ public class SortFactory<T, V extends Comparable<V>> implements SortCriteriaFact
                 return nullsFirst ? ordering.nullsFirst() : ordering.nullsLast();
             }
 
+            public Adapter<T, V> getKeyAdapter()
+            {
+                return adapter;
+            }
+
+            public Comparator<? super V> getKeyComparator()
+            {
+                return Ordering.natural();
+            }
+
             @Override
             public String toString()
             {
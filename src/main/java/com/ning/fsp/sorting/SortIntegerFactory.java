@@ -0,0 +1,124 @@
+package com.ning.fsp.sorting;
+
+import java.util.Comparator;
+
+import com.google.common.collect.Ordering;
+import com.ning.fsp.SortParameter;
+import com.ning.fsp.util.Adapter;
+import com.ning.fsp.util.CompareHelper;
+
+
+/**
+ * Factory that creates criterias to sort a result set by integer values in a column. The values are
+ * sorted as primitive longs.
+ *
+ * @param <T> Type of the sorted objects.
+ */
+public class SortIntegerFactory<T> implements SortCriteriaFactory<T>
+{
+    private final boolean expensive;
+    private final boolean nullsFirst;
+    private final String columnName;
+    private final Adapter<T, Integer> adapter;
+
+    /**
+     * Factory that only returns 'expensive' sort criterias.
+     */
+    public SortIntegerFactory(final boolean nullsFirst, final Adapter<T, Integer> adapter)
+    {
+        this.expensive = true;
+        this.nullsFirst = nullsFirst;
+        this.columnName = null;
+        this.adapter = adapter;
+    }
+
+    /**
+     * Factory that returns sort criterias that can be run 'cheap' or 'expensive'.
+     */
+    public SortIntegerFactory(final boolean nullsFirst, final String columnName, final Adapter<T, Integer> adapter)
+    {
+        this.expensive = false;
+        this.nullsFirst = nullsFirst;
+        this.columnName = columnName;
+        this.adapter = adapter;
+    }
+
+    public SortCriteria<T> getCriteria(final SortParameter sortParameter)
+    {
+
+        return new LongKeyedSortCriteria<T, Integer>() {
+
+            public boolean isDescending()
+            {
+                return sortParameter.getSortDirection() == SortDirection.DESCENDING;
+            }
+
+            public boolean isNullsFirst()
+            {
+                return nullsFirst;
+            }
+
+            public String getColumnName()
+            {
+                return columnName;
+            }
+
+            public boolean isExpensive()
+            {
+                return expensive;
+            }
+
+            public Ordering<T> getOrdering()
+            {
+                final Ordering<T> ordering = new Ordering<T>() {
+
+                    @Override
+                    public int compare(final T left, final T right)
+                    {
+                        final Integer leftElement = adapter.getValue(left);
+                        final Integer rightElement = adapter.getValue(right);
+
+                        return CompareHelper.compareEquality(leftElement, rightElement);
+                    }
+                };
+
+                return nullsFirst ? ordering.nullsFirst() : ordering.nullsLast();
+            }
+
+            public Adapter<T, Integer> getKeyAdapter()
+            {
+                return adapter;
+            }
+
+            public Comparator<? super Integer> getKeyComparator()
+            {
+                return Ordering.natural();
+            }
+
+            public long getLongKey(final Integer key)
+            {
+                return key.longValue();
+            }
+
+            @Override
+            public String toString()
+            {
+                return String.format("IntegerSortCriteria(columnName=%s, descending=%b, nullsFirst=%b)",
+                                     columnName,
+                                     isDescending(),
+                                     nullsFirst);
+            }
+
+            @Override
+            public boolean equals(final Object o)
+            {
+                return this == o;
+            }
+
+            @Override
+            public int hashCode() {
+                return System.identityHashCode(this);
+            }
+        };
+    }
+}
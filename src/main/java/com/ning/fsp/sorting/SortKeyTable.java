@@ -0,0 +1,361 @@
+package com.ning.fsp.sorting;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import com.google.common.collect.Lists;
+import com.ning.fsp.util.Adapter;
+
+/**
+ * Holds the sort keys of a list of elements. Every key is extracted exactly once per element and
+ * criteria (decorate), the elements are then sorted by their positions in the table and finally
+ * mapped back (undecorate). This reduces the number of adapter calls from O(n log n) to n per
+ * criteria.
+ *
+ * Keys of {@link LongKeyedSortCriteria} are stored as primitive long columns. Large tables with only
+ * long columns are sorted by an LSD radix sort; a single long column is otherwise sorted by a
+ * specialized merge sort that compares the long values directly.
+ *
+ * Null elements are not keyed; they are collected separately and placed in front of or behind
+ * all other elements, exactly like the orderings returned by the sort criterias do.
+ *
+ * @param <T> Type of the sorted objects.
+ */
+public class SortKeyTable<T> implements IndexComparator
+{
+    /** Below this size, a merge sort beats the fixed cost of the radix passes. */
+    private static final int RADIX_SORT_THRESHOLD = 4096;
+
+    private final List<T> elements;
+    private final int nullCount;
+    private final boolean nullElementsFirst;
+
+    private final Object[][] keys;
+    private final Comparator<Object>[] comparators;
+    private final long[][] longKeys;
+    private final boolean[][] nullKeys;
+    private final boolean[] descending;
+
+    /**
+     * Returns true if all criterias expose their sort keys.
+     */
+    public static <T> boolean isSupported(final List<SortCriteria<T>> criterias)
+    {
+        for (SortCriteria<T> criteria : criterias) {
+            if (!(criteria instanceof KeyedSortCriteria)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if all criterias expose their sort keys and at least one of them has keys that
+     * should always be extracted before sorting, i.e. primitive or derived keys.
+     */
+    public static <T> boolean isPrecomputed(final List<SortCriteria<T>> criterias)
+    {
+        if (!isSupported(criterias)) {
+            return false;
+        }
+        for (SortCriteria<T> criteria : criterias) {
+            if (criteria instanceof LongKeyedSortCriteria || criteria instanceof DerivedKeySortCriteria) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if null elements are sorted in front of all other elements. The first criteria
+     * decides this, because all criterias consider two null elements equal.
+     */
+    public static <T> boolean isNullElementFirst(final List<SortCriteria<T>> criterias)
+    {
+        if (criterias.isEmpty()) {
+            return false;
+        }
+        final SortCriteria<T> criteria = criterias.get(0);
+        // A reversed 'nulls first' ordering puts the nulls last.
+        return criteria.isNullsFirst() != criteria.isDescending();
+    }
+
+    @SuppressWarnings("unchecked")
+    public SortKeyTable(final List<SortCriteria<T>> criterias, final Iterable<T> elements)
+    {
+        this.elements = (elements instanceof Collection) ? new ArrayList<T>(((Collection<T>) elements).size()) : Lists.<T>newArrayList();
+
+        int nulls = 0;
+        for (T element : elements) {
+            if (element == null) {
+                nulls++;
+            }
+            else {
+                this.elements.add(element);
+            }
+        }
+        this.nullCount = nulls;
+        this.nullElementsFirst = isNullElementFirst(criterias);
+
+        final int size = this.elements.size();
+
+        this.keys = new Object[criterias.size()][];
+        this.comparators = (Comparator<Object>[]) new Comparator<?>[criterias.size()];
+        this.longKeys = new long[criterias.size()][];
+        this.nullKeys = new boolean[criterias.size()][];
+        this.descending = new boolean[criterias.size()];
+
+        for (int i = 0; i < criterias.size(); i++) {
+            final KeyedSortCriteria<T, Object> criteria = (KeyedSortCriteria<T, Object>) criterias.get(i);
+            final Adapter<T, Object> adapter = criteria.getKeyAdapter();
+
+            if (criteria instanceof LongKeyedSortCriteria) {
+                final LongKeyedSortCriteria<T, Object> longCriteria = (LongKeyedSortCriteria<T, Object>) criteria;
+                final long[] column = new long[size];
+                final boolean[] nullColumn = new boolean[size];
+
+                for (int j = 0; j < size; j++) {
+                    final Object key = adapter.getValue(this.elements.get(j));
+                    if (key == null) {
+                        nullColumn[j] = true;
+                    }
+                    else {
+                        column[j] = longCriteria.getLongKey(key);
+                    }
+                }
+                longKeys[i] = column;
+                nullKeys[i] = nullColumn;
+            }
+            else {
+                final Object[] column = new Object[size];
+
+                for (int j = 0; j < size; j++) {
+                    column[j] = adapter.getValue(this.elements.get(j));
+                }
+                keys[i] = column;
+                comparators[i] = criteria.getKeyComparator();
+            }
+            descending[i] = criteria.isDescending();
+        }
+    }
+
+    /**
+     * Returns the number of keyed (non-null) elements.
+     */
+    public int size()
+    {
+        return elements.size();
+    }
+
+    /**
+     * Sorts the keyed elements.
+     *
+     * @return A permutation of <code>0 .. size() - 1</code> in sort order.
+     */
+    public int[] sort()
+    {
+        if (isPrimitive() && size() >= RADIX_SORT_THRESHOLD) {
+            return sortRadix();
+        }
+        if (longKeys.length == 1 && longKeys[0] != null) {
+            return sortSingleLongColumn();
+        }
+
+        final int[] indexes = IndexSort.identity(size());
+        IndexSort.sort(indexes, this);
+        return indexes;
+    }
+
+    /**
+     * Sorts the keyed elements with a parallel merge sort.
+     *
+     * @param executor The executor that runs the sort tasks.
+     * @param parallelism The number of runs to sort concurrently.
+     * @return A permutation of <code>0 .. size() - 1</code> in sort order.
+     */
+    public int[] sort(final ExecutorService executor, final int parallelism)
+    {
+        final int[] indexes = IndexSort.identity(size());
+        ParallelSort.sort(indexes, this, executor, parallelism);
+        return indexes;
+    }
+
+    @Override
+    public int compare(final int left, final int right)
+    {
+        for (int i = 0; i < descending.length; i++) {
+            final int result;
+
+            if (longKeys[i] != null) {
+                final boolean[] nulls = nullKeys[i];
+                if (nulls[left]) {
+                    result = nulls[right] ? 0 : -1;
+                }
+                else if (nulls[right]) {
+                    result = 1;
+                }
+                else {
+                    final long leftKey = longKeys[i][left];
+                    final long rightKey = longKeys[i][right];
+                    result = leftKey < rightKey ? -1 : (leftKey == rightKey ? 0 : 1);
+                }
+            }
+            else {
+                final Object leftKey = keys[i][left];
+                final Object rightKey = keys[i][right];
+
+                if (leftKey == null) {
+                    result = (rightKey == null) ? 0 : -1;
+                }
+                else if (rightKey == null) {
+                    result = 1;
+                }
+                else {
+                    result = comparators[i].compare(leftKey, rightKey);
+                }
+            }
+
+            if (result != 0) {
+                return descending[i] ? (result < 0 ? 1 : -1) : result;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Maps a sorted index permutation back to the elements.
+     *
+     * @param indexes A permutation of <code>0 .. size() - 1</code>.
+     * @return The elements in the order given by the permutation, with the null elements in place.
+     */
+    public List<T> toList(final int[] indexes)
+    {
+        final List<T> result = new ArrayList<T>(indexes.length + nullCount);
+
+        if (nullElementsFirst) {
+            addNulls(result);
+        }
+        for (int index : indexes) {
+            result.add(elements.get(index));
+        }
+        if (!nullElementsFirst) {
+            addNulls(result);
+        }
+        return result;
+    }
+
+    private boolean isPrimitive()
+    {
+        for (long[] column : longKeys) {
+            if (column == null) {
+                return false;
+            }
+        }
+        return longKeys.length > 0;
+    }
+
+    /**
+     * LSD radix sort over all columns. The columns are sorted from the last to the first criteria with
+     * stable passes, so the first criteria ends up as the most significant one.
+     */
+    private int[] sortRadix()
+    {
+        final int size = size();
+        final int[] indexes = IndexSort.identity(size);
+        final long[] sortKeys = new long[size];
+
+        for (int i = longKeys.length - 1; i >= 0; i--) {
+            final long[] column = longKeys[i];
+
+            for (int j = 0; j < size; j++) {
+                final long key = RadixSort.toUnsigned(column[indexes[j]]);
+                sortKeys[j] = descending[i] ? ~key : key;
+            }
+            RadixSort.sort(sortKeys, indexes);
+
+            // Null keys are smaller than all other keys; a stable partition moves them in place.
+            partitionNullKeys(indexes, nullKeys[i], !descending[i]);
+        }
+        return indexes;
+    }
+
+    private static void partitionNullKeys(final int[] indexes, final boolean[] nulls, final boolean nullsInFront)
+    {
+        int nullKeyCount = 0;
+        for (boolean isNull : nulls) {
+            if (isNull) {
+                nullKeyCount++;
+            }
+        }
+        if (nullKeyCount == 0) {
+            return;
+        }
+
+        final int[] partitioned = new int[indexes.length];
+        int nullPosition = nullsInFront ? 0 : indexes.length - nullKeyCount;
+        int keyPosition = nullsInFront ? nullKeyCount : 0;
+
+        for (int index : indexes) {
+            if (nulls[index]) {
+                partitioned[nullPosition++] = index;
+            }
+            else {
+                partitioned[keyPosition++] = index;
+            }
+        }
+        System.arraycopy(partitioned, 0, indexes, 0, indexes.length);
+    }
+
+    private int[] sortSingleLongColumn()
+    {
+        final long[] column = longKeys[0];
+        final boolean[] nulls = nullKeys[0];
+        final int size = size();
+
+        int nullKeyCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (nulls[i]) {
+                nullKeyCount++;
+            }
+        }
+
+        final long[] sortKeys = new long[size - nullKeyCount];
+        final int[] sortIndexes = new int[size - nullKeyCount];
+        final int[] nullIndexes = new int[nullKeyCount];
+
+        for (int i = 0, keyed = 0, unkeyed = 0; i < size; i++) {
+            if (nulls[i]) {
+                nullIndexes[unkeyed++] = i;
+            }
+            else {
+                // Flipping all bits reverses the order without the overflow of a negation.
+                sortKeys[keyed] = descending[0] ? ~column[i] : column[i];
+                sortIndexes[keyed++] = i;
+            }
+        }
+
+        LongSort.sort(sortKeys, sortIndexes);
+
+        // Null keys are smaller than all other keys.
+        final int[] indexes = new int[size];
+        if (descending[0]) {
+            System.arraycopy(sortIndexes, 0, indexes, 0, sortIndexes.length);
+            System.arraycopy(nullIndexes, 0, indexes, sortIndexes.length, nullIndexes.length);
+        }
+        else {
+            System.arraycopy(nullIndexes, 0, indexes, 0, nullIndexes.length);
+            System.arraycopy(sortIndexes, 0, indexes, nullIndexes.length, sortIndexes.length);
+        }
+        return indexes;
+    }
+
+    private void addNulls(final List<T> result)
+    {
+        for (int i = 0; i < nullCount; i++) {
+            result.add(null);
+        }
+    }
+}
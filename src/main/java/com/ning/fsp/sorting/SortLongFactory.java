@@ -0,0 +1,124 @@
+package com.ning.fsp.sorting;
+
+import java.util.Comparator;
+
+import com.google.common.collect.Ordering;
+import com.ning.fsp.SortParameter;
+import com.ning.fsp.util.Adapter;
+import com.ning.fsp.util.CompareHelper;
+
+
+/**
+ * Factory that creates criterias to sort a result set by long values in a column. The values are
+ * sorted as primitive longs.
+ *
+ * @param <T> Type of the sorted objects.
+ */
+public class SortLongFactory<T> implements SortCriteriaFactory<T>
+{
+    private final boolean expensive;
+    private final boolean nullsFirst;
+    private final String columnName;
+    private final Adapter<T, Long> adapter;
+
+    /**
+     * Factory that only returns 'expensive' sort criterias.
+     */
+    public SortLongFactory(final boolean nullsFirst, final Adapter<T, Long> adapter)
+    {
+        this.expensive = true;
+        this.nullsFirst = nullsFirst;
+        this.columnName = null;
+        this.adapter = adapter;
+    }
+
+    /**
+     * Factory that returns sort criterias that can be run 'cheap' or 'expensive'.
+     */
+    public SortLongFactory(final boolean nullsFirst, final String columnName, final Adapter<T, Long> adapter)
+    {
+        this.expensive = false;
+        this.nullsFirst = nullsFirst;
+        this.columnName = columnName;
+        this.adapter = adapter;
+    }
+
+    public SortCriteria<T> getCriteria(final SortParameter sortParameter)
+    {
+
+        return new LongKeyedSortCriteria<T, Long>() {
+
+            public boolean isDescending()
+            {
+                return sortParameter.getSortDirection() == SortDirection.DESCENDING;
+            }
+
+            public boolean isNullsFirst()
+            {
+                return nullsFirst;
+            }
+
+            public String getColumnName()
+            {
+                return columnName;
+            }
+
+            public boolean isExpensive()
+            {
+                return expensive;
+            }
+
+            public Ordering<T> getOrdering()
+            {
+                final Ordering<T> ordering = new Ordering<T>() {
+
+                    @Override
+                    public int compare(final T left, final T right)
+                    {
+                        final Long leftElement = adapter.getValue(left);
+                        final Long rightElement = adapter.getValue(right);
+
+                        return CompareHelper.compareEquality(leftElement, rightElement);
+                    }
+                };
+
+                return nullsFirst ? ordering.nullsFirst() : ordering.nullsLast();
+            }
+
+            public Adapter<T, Long> getKeyAdapter()
+            {
+                return adapter;
+            }
+
+            public Comparator<? super Long> getKeyComparator()
+            {
+                return Ordering.natural();
+            }
+
+            public long getLongKey(final Long key)
+            {
+                return key;
+            }
+
+            @Override
+            public String toString()
+            {
+                return String.format("LongSortCriteria(columnName=%s, descending=%b, nullsFirst=%b)",
+                                     columnName,
+                                     isDescending(),
+                                     nullsFirst);
+            }
+
+            @Override
+            public boolean equals(final Object o)
+            {
+                return this == o;
+            }
+
+            @Override
+            public int hashCode() {
+                return System.identityHashCode(this);
+            }
+        };
+    }
+}
@@ -0,0 +1,224 @@
+package com.ning.fsp.sorting;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Comparator;
+import java.util.Locale;
+
+import com.google.common.collect.Ordering;
+import com.ning.fsp.SortParameter;
+import com.ning.fsp.util.Adapter;
+import com.ning.fsp.util.CaseFolding;
+
+
+/**
+ * Factory that creates criterias to sort a result set by string values in a column. Strings can be
+ * sorted case sensitive, case insensitive or by the collation rules of a locale.
+ *
+ * For a full sort, every string is converted once into a sort key (a case folded string or a
+ * {@link java.text.CollationKey}), so that the sort itself only compares the precomputed keys.
+ * Only full sorts do this. Top-K selections, merges and lazy sorts compare the strings directly
+ * (e.g. with {@link Collator#compare}), as they compare most elements only a few times and
+ * building a key costs about as much as a single comparison.
+ *
+ * @param <T> Type of the sorted objects.
+ */
+public class SortStringFactory<T> implements SortCriteriaFactory<T>
+{
+    private final boolean expensive;
+    private final boolean nullsFirst;
+    private final String columnName;
+    private final StringSortType sortType;
+    private final Locale locale;
+    private final Adapter<T, String> stringAdapter;
+
+    /**
+     * Factory that only returns 'expensive' sort criterias.
+     *
+     * @param locale The locale for collated sorts. Ignored for the other sort types.
+     */
+    public SortStringFactory(final boolean nullsFirst, final StringSortType sortType, final Locale locale, final Adapter<T, String> stringAdapter)
+    {
+        this.expensive = true;
+        this.nullsFirst = nullsFirst;
+        this.columnName = null;
+        this.sortType = sortType;
+        this.locale = locale;
+        this.stringAdapter = stringAdapter;
+    }
+
+    /**
+     * Factory that returns sort criterias that can be run 'cheap' or 'expensive'.
+     *
+     * @param locale The locale for collated sorts. Ignored for the other sort types.
+     */
+    public SortStringFactory(final boolean nullsFirst, final String columnName, final StringSortType sortType, final Locale locale, final Adapter<T, String> stringAdapter)
+    {
+        this.expensive = false;
+        this.nullsFirst = nullsFirst;
+        this.columnName = columnName;
+        this.sortType = sortType;
+        this.locale = locale;
+        this.stringAdapter = stringAdapter;
+    }
+
+    public SortCriteria<T> getCriteria(final SortParameter sortParameter)
+    {
+        final Collator collator = getCollator();
+
+        final Adapter<T, Comparable<?>> keyAdapter = new Adapter<T, Comparable<?>>() {
+            @Override
+            public Comparable<?> getValue(final T element)
+            {
+                final String value = stringAdapter.getValue(element);
+                if (value == null) {
+                    return null;
+                }
+
+                switch (sortType) {
+                case CASE_SENSITIVE:
+                    return value;
+                case CASE_INSENSITIVE:
+                    return CaseFolding.fold(value);
+                case COLLATED:
+                case COLLATED_CASE_INSENSITIVE:
+                    return collator.getCollationKey(value);
+                default:
+                    throw new IllegalArgumentException(String.format("Found unknown sort type %s", sortType));
+                }
+            }
+        };
+
+        final Comparator<String> valueComparator = getValueComparator(collator);
+
+        return new StringSortCriteria<T>() {
+
+            public boolean isDescending()
+            {
+                return sortParameter.getSortDirection() == SortDirection.DESCENDING;
+            }
+
+            public boolean isNullsFirst()
+            {
+                return nullsFirst;
+            }
+
+            public String getColumnName()
+            {
+                return columnName;
+            }
+
+            public boolean isExpensive()
+            {
+                return expensive;
+            }
+
+            public Ordering<T> getOrdering()
+            {
+                final Ordering<T> ordering = new Ordering<T>() {
+
+                    @Override
+                    public int compare(final T left, final T right)
+                    {
+                        final String leftValue = stringAdapter.getValue(left);
+                        final String rightValue = stringAdapter.getValue(right);
+
+                        if (leftValue == null) {
+                            return (rightValue == null) ? 0 : -1;
+                        }
+                        else if (rightValue == null) {
+                            return 1;
+                        }
+                        return valueComparator.compare(leftValue, rightValue);
+                    }
+                };
+
+                return nullsFirst ? ordering.nullsFirst() : ordering.nullsLast();
+            }
+
+            public Adapter<T, Comparable<?>> getKeyAdapter()
+            {
+                return keyAdapter;
+            }
+
+            @SuppressWarnings("unchecked")
+            public Comparator<? super Comparable<?>> getKeyComparator()
+            {
+                return (Comparator<? super Comparable<?>>) (Comparator<?>) Ordering.natural();
+            }
+
+            public byte[] getBinaryKey(final Comparable<?> key)
+            {
+                if (key instanceof CollationKey) {
+                    return ((CollationKey) key).toByteArray();
+                }
+
+                // UTF-16 code units in big endian order compare like the strings.
+                final String value = (String) key;
+                final byte[] bytes = new byte[value.length() * 2];
+                for (int i = 0; i < value.length(); i++) {
+                    bytes[2 * i] = (byte) (value.charAt(i) >>> 8);
+                    bytes[2 * i + 1] = (byte) value.charAt(i);
+                }
+                return bytes;
+            }
+
+            @Override
+            public String toString()
+            {
+                return String.format("StringSortCriteria(columnName=%s, sortType=%s, descending=%b, nullsFirst=%b)",
+                                     columnName,
+                                     sortType,
+                                     isDescending(),
+                                     nullsFirst);
+            }
+
+            @Override
+            public boolean equals(final Object o)
+            {
+                return this == o;
+            }
+
+            @Override
+            public int hashCode() {
+                return System.identityHashCode(this);
+            }
+        };
+    }
+
+    private interface StringSortCriteria<T> extends DerivedKeySortCriteria<T, Comparable<?>>, BinaryKeyedSortCriteria<T, Comparable<?>>
+    {
+    }
+
+    /**
+     * Returns a collator for the collated sort types. Collators are not thread safe, so every criteria gets its own.
+     */
+    private Collator getCollator()
+    {
+        if (sortType != StringSortType.COLLATED && sortType != StringSortType.COLLATED_CASE_INSENSITIVE) {
+            return null;
+        }
+
+        final Collator collator = Collator.getInstance(locale == null ? Locale.getDefault() : locale);
+        if (sortType == StringSortType.COLLATED_CASE_INSENSITIVE) {
+            collator.setStrength(Collator.SECONDARY);
+        }
+        return collator;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Comparator<String> getValueComparator(final Collator collator)
+    {
+        switch (sortType) {
+        case CASE_SENSITIVE:
+            return Ordering.natural();
+        case CASE_INSENSITIVE:
+            return String.CASE_INSENSITIVE_ORDER;
+        case COLLATED:
+        case COLLATED_CASE_INSENSITIVE:
+            return (Comparator<String>) (Comparator<?>) collator;
+        default:
+            throw new IllegalArgumentException(String.format("Found unknown sort type %s", sortType));
+        }
+    }
+}
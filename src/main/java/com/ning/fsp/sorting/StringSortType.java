@@ -0,0 +1,15 @@
+package com.ning.fsp.sorting;
+
+/**
+ * Types of string ordering.
+ */
+public enum StringSortType {
+    /** Orders by the UTF-16 code units of the strings, like {@link String#compareTo(String)}. */
+    CASE_SENSITIVE,
+    /** Orders like {@link String#CASE_INSENSITIVE_ORDER}. */
+    CASE_INSENSITIVE,
+    /** Orders by the rules of the locale's {@link java.text.Collator}. */
+    COLLATED,
+    /** Orders by the rules of the locale's {@link java.text.Collator}, ignoring case differences. */
+    COLLATED_CASE_INSENSITIVE;
+}
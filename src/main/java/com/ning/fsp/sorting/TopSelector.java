@@ -0,0 +1,165 @@
+package com.ning.fsp.sorting;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Selects the first <i>limit</i> elements of a stream according to a comparator without sorting
+ * the whole stream. Only the current candidates are kept in a bounded max-heap, so selecting
+ * k out of n elements costs O(n log k) time and O(k) memory.
+ *
+ * The selection is stable: elements that compare equal are returned in the order in which they
+ * were offered, so the result is the same as the head of a full (stable) sort.
+ *
+ * @param <T> Type of the selected elements.
+ */
+public class TopSelector<T>
+{
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Comparator<? super T> comparator;
+    private final int limit;
+
+    // Grown on demand up to the limit, a large limit over few elements must not allocate the whole window.
+    private Object[] heap;
+    private long[] sequences;
+
+    private int size = 0;
+    private long sequence = 0;
+
+    public TopSelector(final Comparator<? super T> comparator, final int limit)
+    {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative!");
+        }
+        this.comparator = comparator;
+        this.limit = limit;
+        this.heap = new Object[Math.min(limit, INITIAL_CAPACITY)];
+        this.sequences = new long[heap.length];
+    }
+
+    public void offer(final T element)
+    {
+        final long elementSequence = sequence++;
+
+        if (size < limit) {
+            if (size == heap.length) {
+                grow();
+            }
+            heap[size] = element;
+            sequences[size] = elementSequence;
+            siftUp(size++);
+        }
+        else if (limit > 0 && compare(element, elementSequence, 0) < 0) {
+            // The new element is better than the worst candidate, replace it.
+            heap[0] = element;
+            sequences[0] = elementSequence;
+            siftDown(0, size);
+        }
+    }
+
+    public void offerAll(final Iterable<? extends T> elements)
+    {
+        for (T element : elements) {
+            offer(element);
+        }
+    }
+
+    /**
+     * Returns the selected elements in sorted order.
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> toSortedList()
+    {
+        final Object[] sortedHeap = Arrays.copyOf(heap, size);
+        final long[] sortedSequences = Arrays.copyOf(sequences, size);
+
+        final Object[] result = new Object[size];
+
+        // Repeatedly pop the worst element into the last free slot of the result.
+        for (int last = size - 1; last >= 0; last--) {
+            result[last] = sortedHeap[0];
+            sortedHeap[0] = sortedHeap[last];
+            sortedSequences[0] = sortedSequences[last];
+            siftDown(sortedHeap, sortedSequences, 0, last);
+        }
+        return Lists.newArrayList(Arrays.asList((T[]) result));
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    private void grow()
+    {
+        final int capacity = (int) Math.min((long) heap.length * 2, limit);
+        heap = Arrays.copyOf(heap, capacity);
+        sequences = Arrays.copyOf(sequences, capacity);
+    }
+
+    private void siftUp(int index)
+    {
+        while (index > 0) {
+            final int parent = (index - 1) >>> 1;
+            if (compare(heap, sequences, index, parent) <= 0) {
+                break;
+            }
+            swap(heap, sequences, index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(final int index, final int heapSize)
+    {
+        siftDown(heap, sequences, index, heapSize);
+    }
+
+    private void siftDown(final Object[] elements, final long[] elementSequences, int index, final int heapSize)
+    {
+        while (true) {
+            final int left = 2 * index + 1;
+            if (left >= heapSize) {
+                break;
+            }
+            final int right = left + 1;
+            final int largest = (right < heapSize && compare(elements, elementSequences, right, left) > 0) ? right : left;
+            if (compare(elements, elementSequences, largest, index) <= 0) {
+                break;
+            }
+            swap(elements, elementSequences, index, largest);
+            index = largest;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(final T element, final long elementSequence, final int index)
+    {
+        final int result = comparator.compare(element, (T) heap[index]);
+        return result != 0 ? result : (elementSequence < sequences[index] ? -1 : 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(final Object[] elements, final long[] elementSequences, final int left, final int right)
+    {
+        final int result = comparator.compare((T) elements[left], (T) elements[right]);
+        if (result != 0) {
+            return result;
+        }
+        return elementSequences[left] < elementSequences[right] ? -1 : (elementSequences[left] == elementSequences[right] ? 0 : 1);
+    }
+
+    private static void swap(final Object[] elements, final long[] elementSequences, final int left, final int right)
+    {
+        final Object element = elements[left];
+        elements[left] = elements[right];
+        elements[right] = element;
+
+        final long elementSequence = elementSequences[left];
+        elementSequences[left] = elementSequences[right];
+        elementSequences[right] = elementSequence;
+    }
+}
@@ -0,0 +1,33 @@
+package com.ning.fsp.util;
+
+
+public final class CaseFolding
+{
+    private CaseFolding() {
+    }
+
+    /**
+     * Folds the case of a string, so that two strings are {@link String#equalsIgnoreCase(String) equal ignoring case}
+     * exactly if their folded strings are equal, and so that the natural order of the folded strings is the same as
+     * {@link String#CASE_INSENSITIVE_ORDER} of the original strings.
+     */
+    public static String fold(final String value) {
+
+        final char[] chars = value.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = fold(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Folds the case of a single character. ASCII characters are folded without a table lookup.
+     */
+    public static char fold(final char c) {
+
+        if (c < 0x80) {
+            return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
@@ -0,0 +1,93 @@
+package com.ning.fsp.util;
+
+/**
+ * A set of primitive long values. The values are kept in an open addressing hash table with linear probing,
+ * so a lookup neither boxes the value nor follows any pointers.
+ */
+public class LongHashSet
+{
+    private long[] table;
+    private boolean[] used;
+    private int size = 0;
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    public LongHashSet(final int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize must not be negative!");
+        }
+
+        // Keep the table at most half full.
+        int capacity = 4;
+        while (capacity < 2 * expectedSize) {
+            capacity <<= 1;
+        }
+        table = new long[capacity];
+        used = new boolean[capacity];
+    }
+
+    /**
+     * Adds a value to the set.
+     *
+     * @return True if the value was not in the set before.
+     */
+    public boolean add(final long value) {
+        int slot = slot(value, table.length);
+        while (used[slot]) {
+            if (table[slot] == value) {
+                return false;
+            }
+            slot = (slot + 1) & (table.length - 1);
+        }
+
+        table[slot] = value;
+        used[slot] = true;
+
+        if (++size * 2 > table.length) {
+            resize();
+        }
+        return true;
+    }
+
+    public boolean contains(final long value) {
+        int slot = slot(value, table.length);
+        while (used[slot]) {
+            if (table[slot] == value) {
+                return true;
+            }
+            slot = (slot + 1) & (table.length - 1);
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void resize() {
+        final long[] oldTable = table;
+        final boolean[] oldUsed = used;
+
+        table = new long[oldTable.length * 2];
+        used = new boolean[oldTable.length * 2];
+
+        for (int i = 0; i < oldTable.length; i++) {
+            if (oldUsed[i]) {
+                int slot = slot(oldTable[i], table.length);
+                while (used[slot]) {
+                    slot = (slot + 1) & (table.length - 1);
+                }
+                table[slot] = oldTable[i];
+                used[slot] = true;
+            }
+        }
+    }
+
+    private static int slot(final long value, final int capacity) {
+        // Fibonacci hashing spreads sequential ids over the whole table.
+        final long hash = value * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & (capacity - 1);
+    }
+}
@@ -0,0 +1,150 @@
+package com.ning.fsp.filtering;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.ning.fsp.Filter;
+import com.ning.fsp.FilterParameter;
+import com.ning.fsp.filtering.index.IndexedDataset;
+import com.ning.fsp.filtering.index.RowSet;
+import com.ning.fsp.util.Adapter;
+import com.ning.fsp.util.StringMatchType;
+
+@Test(groups="fast")
+public class TestBitmapFiltering
+{
+    // Spans several chunks of 65536 rows, with dense and sparse chunks.
+    private static final int ROW_COUNT = 200000;
+
+    private static final String[] STATUSES = {"NEW", "open", "Closed", null};
+
+    private final FilterBooleanFactory<Integer> activeFactory = new FilterBooleanFactory<Integer>(new Adapter<Integer, Boolean>() {
+        @Override
+        public Boolean getValue(final Integer value) {
+            return (value % 7 == 0) ? null : Boolean.valueOf(value % 3 == 0);
+        }
+    });
+
+    private final FilterStringFactory<Integer> statusFactory = new FilterStringFactory<Integer>(StringMatchType.CASE_INSENSITIVE_EXACT, new Adapter<Integer, String>() {
+        @Override
+        public String getValue(final Integer value) {
+            return STATUSES[value % STATUSES.length];
+        }
+    });
+
+    private final FilterIntegerFactory<Integer> bucketFactory = new FilterIntegerFactory<Integer>(new Adapter<Integer, Integer>() {
+        @Override
+        public Integer getValue(final Integer value) {
+            return (value < 100000) ? value % 5 : value % 11;
+        }
+    });
+
+    public void testRowSetOperations() {
+        final BitSet evens = new BitSet();
+        final BitSet sparse = new BitSet();
+        final List<Integer> sparseRows = Lists.newArrayList();
+        final RowSet.Builder evenBuilder = new RowSet.Builder();
+        for (int row = 0; row < ROW_COUNT; row += 2) {
+            evens.set(row);
+            evenBuilder.add(row);
+        }
+        for (int row = ROW_COUNT - 1; row >= 0; row -= 97) {
+            sparse.set(row);
+            sparseRows.add(row);
+        }
+        final int[] sparseArray = new int[sparseRows.size()];
+        for (int i = 0; i < sparseArray.length; i++) {
+            sparseArray[i] = sparseRows.get(i);
+        }
+
+        final RowSet evenSet = evenBuilder.build();
+        final RowSet sparseSet = RowSet.of(sparseArray);
+        final RowSet allSet = RowSet.all(ROW_COUNT);
+
+        Assert.assertEquals(evenSet.size(), evens.cardinality());
+        Assert.assertEquals(sparseSet.size(), sparse.cardinality());
+        Assert.assertEquals(allSet.size(), ROW_COUNT);
+        Assert.assertTrue(evenSet.contains(ROW_COUNT - 2));
+        Assert.assertFalse(evenSet.contains(ROW_COUNT - 1));
+        Assert.assertTrue(RowSet.empty().isEmpty());
+
+        final BitSet and = (BitSet) evens.clone();
+        and.and(sparse);
+        final BitSet or = (BitSet) evens.clone();
+        or.or(sparse);
+        final BitSet andNot = (BitSet) evens.clone();
+        andNot.andNot(sparse);
+        final BitSet notEvens = new BitSet();
+        notEvens.set(0, ROW_COUNT);
+        notEvens.andNot(evens);
+
+        assertRows(evenSet.and(sparseSet), and);
+        assertRows(sparseSet.and(evenSet), and);
+        assertRows(evenSet.or(sparseSet), or);
+        assertRows(sparseSet.or(evenSet), or);
+        assertRows(evenSet.andNot(sparseSet), andNot);
+        assertRows(allSet.andNot(evenSet), notEvens);
+        assertRows(allSet.andNot(evenSet).or(evenSet), allSet);
+        assertRows(evenSet.andNot(evenSet), new BitSet());
+    }
+
+    public void testBitmapIndexFiltering() {
+        final List<List<FilterParameter>> queries = ImmutableList.<List<FilterParameter>>of(
+            ImmutableList.of(new FilterParameter("active", "true")),
+            ImmutableList.of(new FilterParameter("-active", "true")),
+            ImmutableList.of(new FilterParameter("status", "open"),
+                             new FilterParameter("status", "closed"),
+                             new FilterParameter("bucket", "3")),
+            ImmutableList.of(new FilterParameter("active", "false"),
+                             new FilterParameter("-status", "CLOSED"),
+                             new FilterParameter("-bucket", "1"),
+                             new FilterParameter("-bucket", "2")),
+            ImmutableList.of(new FilterParameter("bucket", "<3"),
+                             new FilterParameter("bucket", "10")));
+
+        final List<Integer> elements = Lists.newArrayListWithCapacity(ROW_COUNT);
+        for (int i = 0; i < ROW_COUNT; i++) {
+            elements.add(i);
+        }
+
+        final IndexedDataset<Integer> dataset = new IndexedDataset<Integer>(elements);
+        dataset.addIndex("active", activeFactory.createBitmapIndex(dataset.getElements()));
+        dataset.addIndex("status", statusFactory.createBitmapIndex(dataset.getElements()));
+        dataset.addIndex("bucket", bucketFactory.createBitmapIndex(dataset.getElements()));
+
+        for (List<FilterParameter> query : queries) {
+            final Filter<Integer> filter = new Filter<Integer>(query, getCriteriaMap(), Filter.FilterCost.EXPENSIVE);
+            final List<Integer> expected = Lists.newArrayList(filter.filter(elements));
+            Assert.assertFalse(expected.isEmpty(), query.toString());
+            Assert.assertEquals(filter.filter(dataset), expected, query.toString());
+        }
+    }
+
+    private void assertRows(final RowSet rows, final RowSet expected) {
+        Assert.assertEquals(rows.toArray(), expected.toArray());
+    }
+
+    private void assertRows(final RowSet rows, final BitSet expected) {
+        final int[] expectedRows = new int[expected.cardinality()];
+        for (int i = 0, row = expected.nextSetBit(0); row >= 0; row = expected.nextSetBit(row + 1)) {
+            expectedRows[i++] = row;
+        }
+        Assert.assertEquals(rows.size(), expectedRows.length);
+        Assert.assertEquals(rows.toArray(), expectedRows);
+    }
+
+    private Map<String, FilterCriteriaFactory<Integer>> getCriteriaMap() {
+        final Map<String, FilterCriteriaFactory<Integer>> criterias = Maps.newHashMap();
+        criterias.put("active", activeFactory);
+        criterias.put("status", statusFactory);
+        criterias.put("bucket", bucketFactory);
+        return criterias;
+    }
+}
@@ -3,17 +3,21 @@ package com.ning.fsp.filtering;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.commons.lang.StringUtils;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.ning.fsp.Filter;
 import com.ning.fsp.FilterParameter;
 import com.ning.fsp.filtering.FilterCriteriaFactory;
 import com.ning.fsp.filtering.FilterIntegerFactory;
 import com.ning.fsp.filtering.FilterStringFactory;
+import com.ning.fsp.filtering.index.IndexedDataset;
 import com.ning.fsp.util.Adapter;
 import com.ning.fsp.util.StringMatchType;
 
@@ -88,6 +92,149 @@ public class TestFiltering
 
     }
 
+    public void testSetFiltering(){
+
+        final Map<String, FilterCriteriaFactory<Integer>> filterCriteriaMap =  getIntegerResultMap();
+        final ImmutableList.Builder<FilterParameter> builder = new ImmutableList.Builder<FilterParameter>();
+        for (int i = 0; i < 500; i += 5) {
+            builder.add(new FilterParameter("quantity", Integer.toString(i)));
+            builder.add(new FilterParameter("id", Integer.toString(i + 1)));
+        }
+        builder.add(new FilterParameter("id", "not a number"));
+        builder.add(new FilterParameter("-id", "11"));
+        builder.add(new FilterParameter("-id", "21"));
+        final Filter<Integer> filter = new Filter<Integer>(builder.build(), filterCriteriaMap, Filter.FilterCost.EXPENSIVE);
+
+        final List<Integer> elements = Lists.newArrayList();
+        final List<Integer> expected = Lists.newArrayList();
+        for (int i = -10; i < 1000; i++) {
+            elements.add(i);
+        }
+
+        for (Integer element : elements) {
+            if (element >= 0 && element < 500 && element % 5 == 0 && element != 10 && element != 20) {
+                expected.add(element);
+            }
+        }
+
+        Assert.assertEquals(Lists.newArrayList(filter.filter(elements)), expected);
+
+        // Values added after filtering join the combined sets, also for the cached adaptive predicate.
+        filter.setAdaptive(true);
+        Assert.assertEquals(Lists.newArrayList(filter.filter(elements)), expected);
+        filter.put("quantity", filterCriteriaMap.get("quantity").getCriteria(new FilterParameter("quantity", "7")));
+        filter.put("id", filterCriteriaMap.get("id").getCriteria(new FilterParameter("id", "8")));
+        expected.add(2, 7);
+        Assert.assertEquals(Lists.newArrayList(filter.filter(elements)), expected);
+    }
+
+    public void testStringSetFiltering(){
+
+        final Map<String, FilterCriteriaFactory<String>> filterCriteriaMap =  getStringResultMap();
+        List<FilterParameter> filterParams = new ImmutableList.Builder<FilterParameter>()
+            .add(new FilterParameter("fullname", "joe"))
+            .add(new FilterParameter("fullname", "JIM"))
+            .add(new FilterParameter("fullname", "Stra\u00dfe"))
+            .add(new FilterParameter("-fullname", "jOE")).build();
+        final Filter<String> filter = new Filter<String>(filterParams, filterCriteriaMap, Filter.FilterCost.EXPENSIVE);
+
+        List<String> elements = Lists.newArrayList("Joe", "Joe Bob", "jim", "Jim", "Bob", "STRA\u00dfE", "Strasse", null);
+
+        Assert.assertEquals(Lists.newArrayList(filter.filter(elements)), ImmutableList.of("jim", "Jim", "STRA\u00dfE"));
+    }
+
+    public void testStringMatchers(){
+
+        final List<String> strings = Lists.newArrayList(null, "", "a", "A", "ab", "aB", "abab", "xAbAby", "bba", "aaab", "Joe Bob", "JOE", "joe3", "o b");
+        for (String match : strings) {
+            final StringMatcher caseSensitiveExact = StringMatcher.compile(StringMatchType.CASE_SENSITIVE_EXACT, match);
+            final StringMatcher caseInsensitiveExact = StringMatcher.compile(StringMatchType.CASE_INSENSITIVE_EXACT, match);
+            final StringMatcher caseSensitivePartial = StringMatcher.compile(StringMatchType.CASE_SENSITIVE_PARTIAL, match);
+            final StringMatcher caseInsensitivePartial = StringMatcher.compile(StringMatchType.CASE_INSENSITIVE_PARTIAL, match);
+
+            for (String value : strings) {
+                Assert.assertEquals(caseSensitiveExact.matches(value), StringUtils.equals(value, match));
+                Assert.assertEquals(caseInsensitiveExact.matches(value), StringUtils.equalsIgnoreCase(value, match));
+                Assert.assertEquals(caseSensitivePartial.matches(value), StringUtils.contains(value, match));
+                Assert.assertEquals(caseInsensitivePartial.matches(value), StringUtils.containsIgnoreCase(value, match));
+            }
+        }
+    }
+
+    public void testMultiPartialFiltering(){
+
+        final List<String> includes = Lists.newArrayList("he", "she", "his", "hers", "\u00e9t\u00e9", "\u00c4rger");
+        final List<String> excludes = Lists.newArrayList("ushers", "x", "\u00dcbel", "ERS");
+
+        final ImmutableList.Builder<FilterParameter> builder = new ImmutableList.Builder<FilterParameter>();
+        for (String include : includes) {
+            builder.add(new FilterParameter("name", include));
+        }
+        for (String exclude : excludes) {
+            builder.add(new FilterParameter("-name", exclude));
+        }
+        final Filter<String> filter = new Filter<String>(builder.build(), getStringResultMap(), Filter.FilterCost.EXPENSIVE);
+
+        final List<String> elements = Lists.newArrayList("ushers", "Usher", "HIS", "this", "sHe", "ahem", "hex", "\u00c9T\u00c9", "\u00e4rger", "\u00fcbel hers", "hi", "", "h", "s h e");
+        final List<String> expected = Lists.newArrayList();
+        for (String element : elements) {
+            boolean included = false;
+            boolean excluded = false;
+            for (String include : includes) {
+                included |= StringMatcher.compile(StringMatchType.CASE_INSENSITIVE_PARTIAL, include).matches(element);
+            }
+            for (String exclude : excludes) {
+                excluded |= StringMatcher.compile(StringMatchType.CASE_INSENSITIVE_PARTIAL, exclude).matches(element);
+            }
+            if (included && !excluded) {
+                expected.add(element);
+            }
+        }
+
+        Assert.assertEquals(Lists.newArrayList(filter.filter(elements)), expected);
+        Assert.assertEquals(expected, ImmutableList.of("Usher", "HIS", "this", "sHe", "ahem", "\u00c9T\u00c9", "\u00e4rger"));
+    }
+
+    public void testTrigramIndexFiltering(){
+
+        final String[] cities = {"Z\u00fcrich", "PARIS", "new york"};
+        final AtomicInteger lookups = new AtomicInteger();
+        final Map<String, FilterCriteriaFactory<Integer>> filterCriteriaMap = Maps.newHashMap();
+        final FilterStringFactory<Integer> nameFactory = new FilterStringFactory<Integer>(StringMatchType.CASE_INSENSITIVE_PARTIAL, new Adapter<Integer, String>() {
+            @Override
+            public String getValue(final Integer value) {
+                lookups.incrementAndGet();
+                return (value % 13 == 0) ? null : String.format("Customer %d from %s", value, cities[value % cities.length]);
+            }
+        });
+        filterCriteriaMap.put("name", nameFactory);
+
+        final List<Integer> elements = Lists.newArrayList();
+        for (int i = 0; i < 20000; i++) {
+            elements.add(i);
+        }
+        final IndexedDataset<Integer> dataset = new IndexedDataset<Integer>(elements);
+        dataset.addIndex("name", nameFactory.createTrigramIndex(dataset.getElements()));
+
+        final List<List<FilterParameter>> queries = ImmutableList.<List<FilterParameter>>of(
+            ImmutableList.of(new FilterParameter("name", "ER 1234 ")),
+            ImmutableList.of(new FilterParameter("name", "\u00dcRICH"), new FilterParameter("-name", "7 fr")),
+            ImmutableList.of(new FilterParameter("name", "r 77"), new FilterParameter("name", "is")),
+            ImmutableList.of(new FilterParameter("-name", "york")),
+            ImmutableList.of(new FilterParameter("name", "london")));
+
+        for (List<FilterParameter> query : queries) {
+            final Filter<Integer> filter = new Filter<Integer>(query, filterCriteriaMap, Filter.FilterCost.EXPENSIVE);
+            Assert.assertEquals(filter.filter(dataset), Lists.newArrayList(filter.filter(elements)), query.toString());
+        }
+
+        // Only the rows containing all trigrams of the match are tested.
+        final Filter<Integer> filter = new Filter<Integer>(queries.get(0), filterCriteriaMap, Filter.FilterCost.EXPENSIVE);
+        lookups.set(0);
+        Assert.assertEquals(filter.filter(dataset), ImmutableList.of(1234));
+        Assert.assertTrue(lookups.get() < 20, String.valueOf(lookups.get()));
+    }
+
     @Test(expectedExceptions=IllegalArgumentException.class)
     public void testEmptyArgument() {
         new FilterParameter("", "false");
@@ -147,6 +294,12 @@ public class TestFiltering
                 return result.intValue();
             }
         }));
+        criterias.put("id", new FilterLongFactory<Integer>(new Adapter<Integer, Long>() {
+            @Override
+            public Long getValue(final Integer result) {
+                return result.longValue() + 1;
+            }
+        }));
         return Collections.unmodifiableMap(criterias);
     }
 
@@ -161,6 +314,12 @@ public class TestFiltering
                 return result;
             }
         }));
+        criterias.put("fullname", new FilterStringFactory<String>(StringMatchType.CASE_INSENSITIVE_EXACT, new Adapter<String, String>() {
+            @Override
+            public String getValue(final String result) {
+                return result;
+            }
+        }));
         return Collections.unmodifiableMap(criterias);
     }
 }
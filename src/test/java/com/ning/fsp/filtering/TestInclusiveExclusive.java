@@ -1,14 +1,24 @@
 package com.ning.fsp.filtering;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.ning.fsp.Filter;
 import com.ning.fsp.FilterParameter;
 import com.ning.fsp.filtering.FilterBooleanFactory;
@@ -112,6 +122,189 @@ public class TestInclusiveExclusive
         Assert.assertEquals(filteredResults[filteredResults.length-1], Boolean.TRUE);
     }
 
+    public void testMixedFieldFiltering() {
+        List<FilterParameter> filterParams = new ImmutableList.Builder<FilterParameter>()
+            .add(new FilterParameter("tens", "1"))
+            .add(new FilterParameter("tens", "3"))
+            .add(new FilterParameter("-tens", "3"))
+            .add(new FilterParameter("tens", "4"))
+            .add(new FilterParameter("-digit", "2"))
+            .add(new FilterParameter("-digit", "5")).build();
+        final Filter<Integer> filter = new Filter<Integer>(filterParams, getIntegerResultMap(), Filter.FilterCost.EXPENSIVE);
+
+        List<Integer> elements = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            elements.add(i);
+        }
+
+        List<Integer> expected = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            if ((i / 10 == 1 || i / 10 == 4) && i % 10 != 2 && i % 10 != 5) {
+                expected.add(i);
+            }
+        }
+
+        Assert.assertEquals(Lists.newArrayList(filter.filter(elements)), expected);
+        Assert.assertEquals(Lists.newArrayList(filter.filter((Iterable<Integer>) elements)), expected);
+        Assert.assertSame(filter.getPredicate(), filter.getPredicate());
+
+        // Adding a criteria recompiles the filter.
+        filter.put("digit", getIntegerResultMap().get("digit").getCriteria(new FilterParameter("digit", "8")));
+        Assert.assertEquals(Lists.newArrayList(filter.filter(elements)), ImmutableList.of(18, 48));
+    }
+
+    public void testAddAfterFiltering() {
+        final Filter<Integer> filter = new Filter<Integer>(ImmutableList.of(new FilterParameter("tens", "1")), getIntegerResultMap(), Filter.FilterCost.EXPENSIVE);
+
+        List<Integer> elements = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            elements.add(i);
+        }
+
+        Assert.assertEquals(filter.filter(elements).size(), 10);
+        final Predicate<Integer> predicate = filter.getPredicate();
+
+        // The field has a collector already, the criteria is added to it.
+        filter.put("tens", getIntegerResultMap().get("tens").getCriteria(new FilterParameter("tens", "2")));
+        Assert.assertNotSame(filter.getPredicate(), predicate);
+        Assert.assertEquals(filter.filter(elements).size(), 20);
+
+        filter.put("digit", getIntegerResultMap().get("digit").getCriteria(new FilterParameter("-digit", "0")));
+        Assert.assertEquals(filter.filter(elements).size(), 18);
+        Assert.assertSame(filter.getPredicate(), filter.getPredicate());
+    }
+
+    public void testAdaptiveFiltering() {
+        List<FilterParameter> filterParams = new ImmutableList.Builder<FilterParameter>()
+            .add(new FilterParameter("tens", "+1"))
+            .add(new FilterParameter("tens", "+2"))
+            .add(new FilterParameter("tens", "+3"))
+            .add(new FilterParameter("digit", "+7"))
+            .add(new FilterParameter("digit", "-4")).build();
+        final Filter<Integer> plainFilter = new Filter<Integer>(filterParams, getIntegerResultMap(), Filter.FilterCost.EXPENSIVE);
+        final Filter<Integer> adaptiveFilter = new Filter<Integer>(filterParams, getIntegerResultMap(), Filter.FilterCost.EXPENSIVE);
+        adaptiveFilter.setAdaptive(true);
+
+        Assert.assertTrue(adaptiveFilter.isAdaptive());
+        Assert.assertTrue(adaptiveFilter.getPredicate() instanceof AdaptivePredicate);
+
+        List<Integer> elements = Lists.newArrayList();
+        for (int i = 0; i < 10000; i++) {
+            elements.add(i % 100);
+        }
+
+        // Enough elements to sample and reorder several times.
+        Assert.assertEquals(Lists.newArrayList(adaptiveFilter.filter(elements)), Lists.newArrayList(plainFilter.filter(elements)));
+        Assert.assertEquals(Lists.newArrayList(adaptiveFilter.filter(elements)).size(), 300);
+
+        final int[] order = ((AdaptivePredicate<Integer>) adaptiveFilter.getPredicate()).getOrder();
+        Arrays.sort(order);
+        Assert.assertEquals(order, new int[] { 0, 1 });
+    }
+
+    public void testParallelFiltering() {
+        List<FilterParameter> filterParams = new ImmutableList.Builder<FilterParameter>()
+            .add(new FilterParameter("tens", "1"))
+            .add(new FilterParameter("tens", "4"))
+            .add(new FilterParameter("tens", "7"))
+            .add(new FilterParameter("-digit", "3")).build();
+        final Filter<Integer> plainFilter = new Filter<Integer>(filterParams, getIntegerResultMap(), Filter.FilterCost.EXPENSIVE);
+        final Filter<Integer> parallelFilter = new Filter<Integer>(filterParams, getIntegerResultMap(), Filter.FilterCost.EXPENSIVE);
+
+        List<Integer> elements = Lists.newArrayList();
+        for (int i = 0; i < 100000; i++) {
+            elements.add((i * 7919) % 100);
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            parallelFilter.setParallel(executor, 4, 1000);
+
+            final List<Integer> expected = Lists.newArrayList(plainFilter.filter(elements));
+            Assert.assertEquals(expected.size(), 27000);
+            Assert.assertEquals(Lists.newArrayList(parallelFilter.filter(elements)), expected);
+            Assert.assertEquals(Lists.newArrayList(parallelFilter.filter((Iterable<Integer>) elements)), expected);
+
+            // Small inputs are filtered sequentially.
+            Assert.assertEquals(Lists.newArrayList(parallelFilter.filter(elements.subList(0, 100))), Lists.newArrayList(plainFilter.filter(elements.subList(0, 100))));
+
+            // Every task samples on its own fork of the adaptive predicate.
+            parallelFilter.setAdaptive(true);
+            Assert.assertEquals(Lists.newArrayList(parallelFilter.filter(elements)), expected);
+
+            // The granularity does not change the result.
+            for (int chunksPerTask : new int[] { 1, 3, 100000 }) {
+                parallelFilter.setParallel(executor, 4, 1000, chunksPerTask);
+                Assert.assertEquals(Lists.newArrayList(parallelFilter.filter(elements)), expected);
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testMaterializedFiltering() {
+        final AtomicInteger evaluations = new AtomicInteger();
+        final Map<String, FilterCriteriaFactory<Integer>> criterias = Maps.newHashMap(getIntegerResultMap());
+        criterias.put("counted", new FilterIntegerFactory<Integer>(new Adapter<Integer, Integer>() {
+                            @Override
+                            public Integer getValue(final Integer value) {
+                                evaluations.incrementAndGet();
+                                return value % 3;
+                            }
+                        }));
+
+        List<FilterParameter> filterParams = new ImmutableList.Builder<FilterParameter>()
+            .add(new FilterParameter("counted", "0")).build();
+        final Filter<Integer> filter = new Filter<Integer>(filterParams, criterias, Filter.FilterCost.EXPENSIVE);
+        filter.setMaterialized(true);
+        Assert.assertTrue(filter.isMaterialized());
+
+        List<Integer> elements = Lists.newArrayList();
+        for (int i = 0; i < 1000; i++) {
+            elements.add(i);
+        }
+
+        final Collection<Integer> filtered = filter.filter(elements);
+        Assert.assertTrue(filtered instanceof RandomAccess);
+        Assert.assertEquals(filtered.size(), 334);
+        Assert.assertFalse(filtered.isEmpty());
+        Assert.assertEquals(((List<Integer>) filtered).get(333), Integer.valueOf(999));
+        Assert.assertEquals(Lists.newArrayList(filtered), Lists.newArrayList(Iterables.filter(elements, new Predicate<Integer>() {
+            @Override
+            public boolean apply(final Integer value) {
+                return value % 3 == 0;
+            }
+        })));
+
+        // Every element was evaluated once, no matter how often the result was used.
+        Assert.assertEquals(evaluations.get(), 1000);
+
+        // Collections without random access are copied.
+        final Collection<Integer> copied = filter.filter(Sets.newLinkedHashSet(elements));
+        Assert.assertEquals(Lists.newArrayList(copied), Lists.newArrayList(filtered));
+        Assert.assertEquals(evaluations.get(), 2000);
+    }
+
+    public final Map<String, FilterCriteriaFactory<Integer>> getIntegerResultMap() {
+        final Map<String, FilterCriteriaFactory<Integer>> criterias = Maps.newHashMap();
+
+        criterias.put("tens", new FilterIntegerFactory<Integer>(new Adapter<Integer, Integer>() {
+                            @Override
+                            public Integer getValue(final Integer value) {
+                                return value / 10;
+                            }
+                        }));
+        criterias.put("digit", new FilterIntegerFactory<Integer>(new Adapter<Integer, Integer>() {
+                            @Override
+                            public Integer getValue(final Integer value) {
+                                return value % 10;
+                            }
+                        }));
+
+        return Collections.unmodifiableMap(criterias);
+    }
+
     public final Map<String, FilterCriteriaFactory<Boolean>> getBooleanResultMap() {
         final Map<String, FilterCriteriaFactory<Boolean>> criterias = Maps.newHashMap();
 
@@ -0,0 +1,219 @@
+package com.ning.fsp.filtering;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.math.LongRange;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.ning.fsp.Filter;
+import com.ning.fsp.FilterParameter;
+import com.ning.fsp.filtering.index.IndexedDataset;
+import com.ning.fsp.filtering.index.TimePartitionedDataset;
+import com.ning.fsp.util.Adapter;
+
+@Test(groups="fast")
+public class TestRangeFiltering
+{
+    private static final DateTime START = new DateTime(2010, 1, 1, 0, 0, 0, 0, DateTimeZone.UTC);
+
+    private final FilterLongFactory<Integer> priceFactory = new FilterLongFactory<Integer>("price", new Adapter<Integer, Long>() {
+        @Override
+        public Long getValue(final Integer value) {
+            return (value % 10 == 9) ? null : Long.valueOf(value * 3 % 1000);
+        }
+    });
+
+    private final FilterIntegerFactory<Integer> quantityFactory = new FilterIntegerFactory<Integer>(new Adapter<Integer, Integer>() {
+        @Override
+        public Integer getValue(final Integer value) {
+            return value % 50;
+        }
+    });
+
+    private final FilterDateFactory<Integer> createdFactory = new FilterDateFactory<Integer>(new Adapter<Integer, DateTime>() {
+        @Override
+        public DateTime getValue(final Integer value) {
+            return START.plusHours(value);
+        }
+    });
+
+    public void testRangeParsing() {
+        final Map<String, LongRange> ranges = Maps.newLinkedHashMap();
+        ranges.put("<5", new LongRange(Long.MIN_VALUE, 4));
+        ranges.put("<=5", new LongRange(Long.MIN_VALUE, 5));
+        ranges.put(" > 5", new LongRange(6, Long.MAX_VALUE));
+        ranges.put(">=-5", new LongRange(-5, Long.MAX_VALUE));
+        ranges.put("-5..5", new LongRange(-5, 5));
+        ranges.put("5..-5", null);
+        ranges.put("<x", null);
+
+        for (Map.Entry<String, LongRange> range : ranges.entrySet()) {
+            final RangeFilterCriteria<Integer> criteria = (RangeFilterCriteria<Integer>) priceFactory.getCriteria(new FilterParameter("price", range.getKey()));
+            Assert.assertEquals(criteria.getRange(), range.getValue(), range.getKey());
+            // Ranges have no single match.
+            Assert.assertNull(criteria.getMatch(), range.getKey());
+        }
+
+        Assert.assertFalse(FilterRanges.isRange("-5"));
+        Assert.assertEquals(priceFactory.getCriteria(new FilterParameter("price", "-5")).getMatch(), Long.valueOf(-5));
+        Assert.assertEquals(((RangeFilterCriteria<Integer>) priceFactory.getCriteria(new FilterParameter("price", "-5"))).getRange(), new LongRange(-5, -5));
+
+        // Numbers that are valid ISO dates are years, longer ones milliseconds.
+        Assert.assertEquals(((DateTime) createdFactory.getCriteria(new FilterParameter("created", "2010")).getMatch()).getMillis(), START.getMillis());
+        Assert.assertEquals(((DateTime) createdFactory.getCriteria(new FilterParameter("created", String.valueOf(START.getMillis()))).getMatch()).getMillis(), START.getMillis());
+
+        // Dates without a zone are UTC, whatever the zone of the server.
+        final DateTimeZone defaultZone = DateTimeZone.getDefault();
+        try {
+            DateTimeZone.setDefault(DateTimeZone.forID("America/Los_Angeles"));
+            final RangeFilterCriteria<Integer> criteria = (RangeFilterCriteria<Integer>) createdFactory.getCriteria(new FilterParameter("created", "2010-01-11..2010-01-12T12:00"));
+            Assert.assertEquals(criteria.getRange(), new LongRange(START.plusDays(10).getMillis(), START.plusDays(11).plusHours(12).getMillis()));
+        }
+        finally {
+            DateTimeZone.setDefault(defaultZone);
+        }
+    }
+
+    public void testRangeFiltering() {
+        final List<FilterParameter> filterParams = new ImmutableList.Builder<FilterParameter>()
+            .add(new FilterParameter("price", "100..300"))
+            .add(new FilterParameter("price", ">=900"))
+            .add(new FilterParameter("-price", "150..160"))
+            .add(new FilterParameter("quantity", "<10"))
+            .add(new FilterParameter("-quantity", "3"))
+            .add(new FilterParameter("created", START.plusHours(24).toString() + ".." + START.plusHours(24 * 30).toString()))
+            .add(new FilterParameter("-created", ">" + START.plusHours(24 * 20).getMillis())).build();
+
+        final List<Integer> elements = Lists.newArrayList();
+        for (int i = 0; i < 1000; i++) {
+            elements.add(i);
+        }
+
+        final List<Integer> expected = Lists.newArrayList();
+        for (Integer element : elements) {
+            final long price = element * 3 % 1000;
+            final boolean priceMatches = element % 10 != 9 && ((price >= 100 && price <= 300) || price >= 900) && (price < 150 || price > 160);
+            final boolean quantityMatches = element % 50 < 10 && element % 50 != 3;
+            final boolean createdMatches = element >= 24 && element <= 24 * 20;
+            if (priceMatches && quantityMatches && createdMatches) {
+                expected.add(element);
+            }
+        }
+        Assert.assertFalse(expected.isEmpty());
+
+        final Filter<Integer> filter = new Filter<Integer>(filterParams, getCriteriaMap(), Filter.FilterCost.EXPENSIVE);
+        Assert.assertEquals(Lists.newArrayList(filter.filter(elements)), expected);
+
+        // Fully indexed.
+        final IndexedDataset<Integer> dataset = new IndexedDataset<Integer>(elements);
+        dataset.addIndex("price", priceFactory.createIndex(dataset.getElements()));
+        dataset.addIndex("quantity", quantityFactory.createIndex(dataset.getElements()));
+        dataset.addIndex("created", createdFactory.createIndex(dataset.getElements()));
+        Assert.assertEquals(filter.filter(dataset), expected);
+
+        // Partially indexed, the remaining fields are tested on the rows of the index lookups.
+        final IndexedDataset<Integer> partialDataset = new IndexedDataset<Integer>(elements);
+        partialDataset.addIndex("created", createdFactory.createIndex(partialDataset.getElements()));
+        Assert.assertEquals(filter.filter(partialDataset), expected);
+
+        // Not indexed at all.
+        Assert.assertEquals(filter.filter(new IndexedDataset<Integer>(elements)), expected);
+
+        // Criterias that the database could run are applied as well, the dataset is in memory.
+        final Map<String, FilterCriteriaFactory<Integer>> columnCriterias = Maps.newHashMap(getCriteriaMap());
+        columnCriterias.put("created", new FilterDateFactory<Integer>("created_at", new Adapter<Integer, DateTime>() {
+            @Override
+            public DateTime getValue(final Integer value) {
+                return START.plusHours(value);
+            }
+        }));
+        final Filter<Integer> cheapFilter = new Filter<Integer>(filterParams, columnCriterias);
+        Assert.assertTrue(cheapFilter.isCheap());
+        Assert.assertEquals(cheapFilter.filter(dataset), expected);
+        Assert.assertEquals(cheapFilter.filter(new IndexedDataset<Integer>(elements)), expected);
+    }
+
+    public void testTimePartitionedFiltering() {
+        final AtomicInteger quantityLookups = new AtomicInteger();
+        final Adapter<Integer, DateTime> dateAdapter = new Adapter<Integer, DateTime>() {
+            @Override
+            public DateTime getValue(final Integer value) {
+                return (value < 0) ? null : START.plusHours(value);
+            }
+        };
+
+        final Map<String, FilterCriteriaFactory<Integer>> criterias = Maps.newHashMap();
+        criterias.put("created", new FilterDateFactory<Integer>(dateAdapter));
+        criterias.put("quantity", new FilterIntegerFactory<Integer>(new Adapter<Integer, Integer>() {
+            @Override
+            public Integer getValue(final Integer value) {
+                quantityLookups.incrementAndGet();
+                return Math.abs(value) % 50;
+            }
+        }));
+
+        final Map<String, FilterCriteriaFactory<Integer>> columnCriterias = Maps.newHashMap(criterias);
+        columnCriterias.put("created", new FilterDateFactory<Integer>("created_at", dateAdapter));
+
+        final List<Integer> elements = Lists.newArrayList();
+        for (int i = -20; i < 24 * 100; i++) {
+            elements.add(i);
+        }
+
+        final TimePartitionedDataset<Integer> dataset = new TimePartitionedDataset<Integer>("created", dateAdapter);
+        dataset.addAll(elements);
+        Assert.assertEquals(dataset.size(), elements.size());
+        Assert.assertEquals(dataset.getPartitions().size(), 101);
+
+        final List<List<FilterParameter>> queries = ImmutableList.<List<FilterParameter>>of(
+            ImmutableList.of(new FilterParameter("created", START.plusDays(10) + ".." + START.plusDays(13).minusMillis(1)),
+                             new FilterParameter("quantity", "<25")),
+            ImmutableList.of(new FilterParameter("created", ">=" + START.plusDays(95).plusHours(5)),
+                             new FilterParameter("-created", START.plusDays(97) + ".." + START.plusDays(98)),
+                             new FilterParameter("-quantity", "7")),
+            ImmutableList.of(new FilterParameter("-created", ">=" + START.plusDays(1)),
+                             new FilterParameter("quantity", "10..20")),
+            ImmutableList.of(new FilterParameter("quantity", "10..20")));
+
+        for (List<FilterParameter> query : queries) {
+            final Filter<Integer> filter = new Filter<Integer>(query, criterias, Filter.FilterCost.EXPENSIVE);
+            final List<Integer> expected = Lists.newArrayList(filter.filter(elements));
+            Collections.sort(expected, new Comparator<Integer>() {
+                @Override
+                public int compare(final Integer left, final Integer right) {
+                    // Rows without a date come last.
+                    return (left < 0) == (right < 0) ? left.compareTo(right) : (left < 0 ? 1 : -1);
+                }
+            });
+            Assert.assertEquals(filter.filter(dataset), expected, query.toString());
+
+            // Criterias that the database could run are applied as well, the dataset is in memory.
+            final Filter<Integer> cheapFilter = new Filter<Integer>(query, columnCriterias);
+            Assert.assertEquals(cheapFilter.filter(dataset), expected, query.toString());
+        }
+
+        // Only the rows of the three requested days are looked at.
+        final Filter<Integer> filter = new Filter<Integer>(queries.get(0), criterias, Filter.FilterCost.EXPENSIVE);
+        quantityLookups.set(0);
+        Assert.assertEquals(filter.filter(dataset).size(), 37);
+        Assert.assertEquals(quantityLookups.get(), 72);
+    }
+
+    private Map<String, FilterCriteriaFactory<Integer>> getCriteriaMap() {
+        final Map<String, FilterCriteriaFactory<Integer>> criterias = Maps.newHashMap();
+        criterias.put("price", priceFactory);
+        criterias.put("quantity", quantityFactory);
+        criterias.put("created", createdFactory);
+        return Collections.unmodifiableMap(criterias);
+    }
+}
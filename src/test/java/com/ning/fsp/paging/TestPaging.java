@@ -9,14 +9,18 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.ning.fsp.Filter;
 import com.ning.fsp.FilterParameter;
 import com.ning.fsp.Pager;
 import com.ning.fsp.PagerParameter;
+import com.ning.fsp.SortParameter;
+import com.ning.fsp.Sorter;
 import com.ning.fsp.filtering.FilterCriteriaFactory;
 import com.ning.fsp.filtering.FilterIntegerFactory;
 import com.ning.fsp.sorting.SortCriteriaFactory;
+import com.ning.fsp.sorting.SortDirection;
 import com.ning.fsp.sorting.SortFactory;
 import com.ning.fsp.util.Adapter;
 
@@ -118,5 +122,53 @@ public class TestPaging
         Assert.assertEquals(results[2], 4);
         Assert.assertEquals(results[3], 4);
     }
-}
 
+    public void testExpensiveIterablePagination()
+    {
+        List<Integer> elements = new ImmutableList.Builder<Integer>().add(0).add(100).add(4).add(14).add(24).add(34).build();
+
+        final Pager<Integer> pager = new Pager<Integer>(new PagerParameter(1, 3), Pager.PagerCost.EXPENSIVE);
+        final Iterable<Integer> pagedResults = pager.page((Iterable<Integer>) elements);
+
+        Assert.assertEquals(ImmutableList.copyOf(pagedResults), elements.subList(1, 4));
+        // The paged view can be iterated more than once.
+        Assert.assertEquals(ImmutableList.copyOf(pagedResults), elements.subList(1, 4));
+
+        final Pager<Integer> openPager = new Pager<Integer>(new PagerParameter(4, null), Pager.PagerCost.EXPENSIVE);
+        Assert.assertEquals(ImmutableList.copyOf(openPager.page((Iterable<Integer>) elements)), elements.subList(4, 6));
+
+        final Pager<Integer> restPager = new Pager<Integer>(new PagerParameter(2, Integer.MAX_VALUE), Pager.PagerCost.EXPENSIVE);
+        Assert.assertEquals(ImmutableList.copyOf(restPager.page((Iterable<Integer>) elements)), elements.subList(2, 6));
+        Assert.assertEquals(ImmutableList.copyOf(restPager.page((Collection<Integer>) elements).iterator()), elements.subList(2, 6));
+    }
+
+    public void testSortedTailPagination()
+    {
+        final Map<String, SortCriteriaFactory<Integer>> criterias = Maps.newHashMap();
+        criterias.put("digit", new SortFactory<Integer, Integer>(false, new Adapter<Integer, Integer>() {
+            @Override
+            public Integer getValue(Integer val) {
+                return val % 7;
+            }
+        }));
+        final Sorter<Integer> sorter = new Sorter<Integer>(ImmutableList.of(new SortParameter("digit", SortDirection.DESCENDING)), criterias);
+
+        // Distinct elements with many equal sort keys, so that the order of equal elements matters.
+        List<Integer> elements = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            elements.add((i * 37) % 100);
+        }
+        final List<Integer> sorted = Lists.newArrayList(sorter.sort(elements));
+
+        for (int start : new int[] { 0, 10, 49, 50, 51, 85, 95, 99, 100, 120 }) {
+            final Pager<Integer> pager = new Pager<Integer>(new PagerParameter(start, 10), null, sorter);
+            final List<Integer> expected = sorted.subList(Math.min(start, 100), Math.min(start + 10, 100));
+
+            Assert.assertEquals(Lists.newArrayList(sorter.sortPage(elements, pager)), expected);
+        }
+
+        // A window to the end of the list must not overflow.
+        final Pager<Integer> restPager = new Pager<Integer>(new PagerParameter(10, Integer.MAX_VALUE), null, sorter);
+        Assert.assertEquals(sorter.sortPage(elements, restPager), sorted.subList(10, 100));
+    }
+}
@@ -1,14 +1,29 @@
 package com.ning.fsp.sorting;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import org.joda.time.DateTime;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import com.ning.fsp.Pager;
+import com.ning.fsp.PagerParameter;
 import com.ning.fsp.SortParameter;
 import com.ning.fsp.Sorter;
 import com.ning.fsp.sorting.SortCriteriaFactory;
@@ -27,6 +42,31 @@ public class TestSorter
         }
     }
 
+    private static class DigitAdapter implements Adapter<Integer, Integer> {
+        @Override
+        public Integer getValue(final Integer value) {
+            return value % 10;
+        }
+    }
+
+    /**
+     * Returns the numbers from 0 to count - 1 in a scrambled order.
+     */
+    private static List<Integer> scrambledNumbers(final int count) {
+        final List<Integer> numbers = new ArrayList<Integer>(count);
+        for (int i = 0; i < count; i++) {
+            numbers.add((i * 7919) % count);
+        }
+        return numbers;
+    }
+
+    /**
+     * Returns a sorter for a single criteria.
+     */
+    private static <T> Sorter<T> createSorter(final SortDirection direction, final SortCriteriaFactory<T> factory) {
+        return new Sorter<T>(ImmutableList.of(new SortParameter("value", direction)), ImmutableMap.<String, SortCriteriaFactory<T>>of("value", factory));
+    }
+
     public void testBasicIntegerSorting(){
 
         List<SortParameter> sortParams = new ImmutableList.Builder<SortParameter>().add(new SortParameter("Integer", SortDirection.DESCENDING)).build();
@@ -148,5 +188,484 @@ public class TestSorter
 
     }
 
-}
+    public void testTopSortingWithPager(){
+
+        List<SortParameter> sortParams = new ImmutableList.Builder<SortParameter>().add(new SortParameter("Integer", SortDirection.ASCENDING)).build();
+        Adapter<Integer, Integer> iAdaptor = new IdentityAdapter<Integer>();
+
+        Map<String, SortCriteriaFactory<Integer>> criteriaMap = new ImmutableMap.Builder<String, SortCriteriaFactory<Integer>>().put("integer", new SortFactory<Integer, Integer>(false, iAdaptor )).build() ;
+
+        Sorter<Integer> sorter = new Sorter<Integer>(sortParams, criteriaMap);
+        Pager<Integer> pager = new Pager<Integer>(new PagerParameter(2, 3), null, sorter);
+
+        List<Integer> numbers = new ArrayList<Integer>();
+        for (int i = 100; i > 0; i--) {
+            numbers.add(i % 50);
+        }
+
+        List<Integer> sortedNumbers = new ArrayList<Integer>(sorter.sort(numbers, pager));
+        Assert.assertEquals(sortedNumbers, ImmutableList.of(0, 0, 1, 1, 2));
+
+        List<Integer> pagedNumbers = new ArrayList<Integer>(pager.page(sortedNumbers));
+        Assert.assertEquals(pagedNumbers, ImmutableList.of(1, 1, 2));
+
+        // Window larger than the list falls back to a full sort.
+        Assert.assertEquals(sorter.sortTop(numbers, 200).size(), 100);
+        Assert.assertEquals(sorter.sortTop(numbers, 0).size(), 0);
+        Assert.assertEquals(sorter.sortTop(numbers, Integer.MAX_VALUE).size(), 100);
+
+        // A window to the end of the list must not overflow.
+        Pager<Integer> restPager = new Pager<Integer>(new PagerParameter(10, Integer.MAX_VALUE), null, sorter);
+        Assert.assertEquals(ImmutableList.copyOf(sorter.sort((Iterable<Integer>) numbers, restPager)).size(), 100);
+    }
+
+    public void testKeyCachingSorting(){
+
+        final int[] calls = new int[1];
+        Adapter<Integer, Integer> countingAdaptor = new Adapter<Integer, Integer>() {
+            @Override
+            public Integer getValue(final Integer value) {
+                calls[0]++;
+                return value % 7 == 0 ? null : value % 10;
+            }
+        };
+        Adapter<Integer, Integer> iAdaptor = new IdentityAdapter<Integer>();
+
+        List<SortParameter> sortParams = new ImmutableList.Builder<SortParameter>().add(new SortParameter("digit", SortDirection.DESCENDING)).add(new SortParameter("integer", SortDirection.ASCENDING)).build();
+        Map<String, SortCriteriaFactory<Integer>> criteriaMap = new ImmutableMap.Builder<String, SortCriteriaFactory<Integer>>()
+            .put("digit", new SortFactory<Integer, Integer>(true, countingAdaptor))
+            .put("integer", new SortFactory<Integer, Integer>(false, iAdaptor)).build();
+
+        List<Integer> numbers = scrambledNumbers(1000);
+        numbers.add(null);
+
+        Sorter<Integer> sorter = new Sorter<Integer>(sortParams, criteriaMap);
+        List<Integer> expected = new ArrayList<Integer>(sorter.sort(numbers));
+
+        sorter.setKeyCaching(true);
+        calls[0] = 0;
+        List<Integer> sortedNumbers = new ArrayList<Integer>(sorter.sort(numbers));
+
+        Assert.assertEquals(sortedNumbers, expected);
+        Assert.assertEquals(calls[0], 1000);
+    }
+
+    public void testPrimitiveSorting(){
+
+        Adapter<Long, Long> lAdaptor = new Adapter<Long, Long>() {
+            @Override
+            public Long getValue(final Long value) {
+                return value % 11 == 0 ? null : value;
+            }
+        };
+        Adapter<Long, DateTime> dAdaptor = new Adapter<Long, DateTime>() {
+            @Override
+            public DateTime getValue(final Long value) {
+                return value % 11 == 0 ? null : new DateTime(value);
+            }
+        };
+
+        List<Long> numbers = new ArrayList<Long>();
+        for (long i = 0; i < 1000; i++) {
+            numbers.add((i * 7919) % 500 - 250);
+        }
+        numbers.add(null);
+        numbers.add(Long.MIN_VALUE + 1);
+        numbers.add(Long.MAX_VALUE);
+
+        for (SortDirection direction : SortDirection.values()) {
+            for (boolean nullsFirst : new boolean[] { true, false }) {
+                Sorter<Long> genericSorter = createSorter(direction, new SortFactory<Long, Long>(nullsFirst, lAdaptor));
+                Sorter<Long> longSorter = createSorter(direction, new SortLongFactory<Long>(nullsFirst, lAdaptor));
+                Sorter<Long> dateSorter = createSorter(direction, new SortDateFactory<Long>(nullsFirst, dAdaptor));
+
+                List<Long> expected = new ArrayList<Long>(genericSorter.sort(numbers));
+
+                Assert.assertEquals(new ArrayList<Long>(longSorter.sort(numbers)), expected);
+                Assert.assertEquals(new ArrayList<Long>(dateSorter.sort(numbers)), expected);
+            }
+        }
+    }
+
+    public void testParallelSorting(){
+
+        List<Integer> numbers = scrambledNumbers(10000);
+
+        Sorter<Integer> sorter = createSorter(SortDirection.DESCENDING, new SortFactory<Integer, Integer>(false, new DigitAdapter()));
+        List<Integer> expected = new ArrayList<Integer>(sorter.sort(numbers));
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (int parallelism : new int[] { 1, 2, 3, 5, 8 }) {
+                sorter.setParallel(executor, parallelism, 1000);
+                sorter.setKeyCaching(false);
+                Assert.assertEquals(new ArrayList<Integer>(sorter.sort(numbers)), expected);
+                sorter.setKeyCaching(true);
+                Assert.assertEquals(new ArrayList<Integer>(sorter.sort(numbers)), expected);
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testCompiledOrderingWithPlainCriteria(){
+
+        final SortCriteria<Integer> parityCriteria = new SortCriteria<Integer>() {
+            public boolean isDescending() { return true; }
+            public boolean isNullsFirst() { return false; }
+            public boolean isExpensive() { return true; }
+            public String getColumnName() { return null; }
+            public Ordering<Integer> getOrdering() {
+                return new Ordering<Integer>() {
+                    @Override
+                    public int compare(final Integer left, final Integer right) {
+                        return (left % 2) - (right % 2);
+                    }
+                }.nullsLast();
+            }
+        };
+
+        Sorter<Integer> sorter = new Sorter<Integer>(null, null);
+        sorter.add(parityCriteria);
+        sorter.add(new SortFactory<Integer, Integer>(true, new IdentityAdapter<Integer>()).getCriteria(new SortParameter("integer", SortDirection.ASCENDING)));
+
+        List<Integer> numbers = Lists.newArrayList(4, null, 3, 2, 1);
+        Assert.assertEquals(new ArrayList<Integer>(sorter.sort(numbers)), Lists.newArrayList(null, 1, 3, 2, 4));
+    }
+
+    public void testExternalSorting() throws IOException {
+
+        List<Integer> numbers = scrambledNumbers(1000);
+        for (int i = 0; i < numbers.size(); i += 97) {
+            numbers.set(i, null);
+        }
 
+        final Sorter<Integer> sorter = createSorter(SortDirection.ASCENDING, new SortFactory<Integer, Integer>(true, new DigitAdapter()));
+        List<Integer> expected = Lists.newArrayList(sorter.sort((Iterable<Integer>) numbers));
+
+        ElementCodec<Integer> codec = new ElementCodec<Integer>() {
+            @Override
+            public void write(final Integer element, final DataOutput out) throws IOException {
+                out.writeInt(element);
+            }
+
+            @Override
+            public Integer read(final DataInput in) throws IOException {
+                return in.readInt();
+            }
+        };
+        File tempDirectory = new File(System.getProperty("java.io.tmpdir"), "fsp-test-" + System.nanoTime());
+        Assert.assertTrue(tempDirectory.mkdir());
+
+        try {
+            ExternalSort.SpilledRuns<Integer> sortedNumbers = sorter.sortExternal(numbers, codec, 64, tempDirectory);
+            Assert.assertEquals(sortedNumbers.getRunCount(), 16);
+            Assert.assertEquals(tempDirectory.list().length, 16);
+
+            Assert.assertEquals(Lists.newArrayList(sortedNumbers), expected);
+            // Every iteration merges the runs again.
+            Assert.assertEquals(Lists.newArrayList(sortedNumbers), expected);
+            sortedNumbers.close();
+            Assert.assertEquals(tempDirectory.list().length, 0);
+
+            // Small inputs are sorted in memory.
+            ExternalSort.SpilledRuns<Integer> smallNumbers = sorter.sortExternal(numbers.subList(0, 64), codec, 64, tempDirectory);
+            Assert.assertEquals(smallNumbers.getRunCount(), 0);
+            Assert.assertEquals(Lists.newArrayList(smallNumbers), Lists.newArrayList(sorter.sort(numbers.subList(0, 64))));
+            smallNumbers.close();
+
+            // A run that fails to spill is not left behind.
+            try {
+                sorter.sortExternal(numbers, new ElementCodec<Integer>() {
+                    @Override
+                    public void write(final Integer element, final DataOutput out) throws IOException {
+                        throw new IOException("Disk full");
+                    }
+
+                    @Override
+                    public Integer read(final DataInput in) throws IOException {
+                        throw new UnsupportedOperationException();
+                    }
+                }, 64, tempDirectory);
+                Assert.fail();
+            }
+            catch (IllegalStateException ise) {
+                // Expected.
+            }
+            Assert.assertEquals(tempDirectory.list().length, 0);
+
+            // Any other failure does not leave spilled runs behind either.
+            try {
+                sorter.sortExternal(numbers, new ElementCodec<Integer>() {
+                    private int written = 0;
+
+                    @Override
+                    public void write(final Integer element, final DataOutput out) throws IOException {
+                        if (++written > 500) {
+                            throw new IllegalArgumentException("Unsupported element");
+                        }
+                        out.writeInt(element);
+                    }
+
+                    @Override
+                    public Integer read(final DataInput in) throws IOException {
+                        return in.readInt();
+                    }
+                }, 64, tempDirectory);
+                Assert.fail();
+            }
+            catch (IllegalArgumentException iae) {
+                // Expected.
+            }
+            Assert.assertEquals(tempDirectory.list().length, 0);
+
+            // With a small fan-in the 16 runs are merged in two passes, into 6 and then 2 runs.
+            Ordering<Integer> byDigit = Ordering.natural().onResultOf(new Function<Integer, Integer>() {
+                @Override
+                public Integer apply(final Integer value) {
+                    return value % 10;
+                }
+            }).nullsFirst();
+            ExternalSort<Integer> externalSort = new ExternalSort<Integer>(byDigit, new Function<List<Integer>, List<Integer>>() {
+                @Override
+                public List<Integer> apply(final List<Integer> run) {
+                    return Lists.newArrayList(sorter.sort((Iterable<Integer>) run));
+                }
+            }, codec, 64, 3, tempDirectory);
+            ExternalSort.SpilledRuns<Integer> mergedNumbers = externalSort.sort(numbers);
+            Assert.assertEquals(mergedNumbers.getRunCount(), 2);
+            Assert.assertEquals(tempDirectory.list().length, 2);
+            Assert.assertEquals(Lists.newArrayList(mergedNumbers), expected);
+            mergedNumbers.close();
+            Assert.assertEquals(tempDirectory.list().length, 0);
+        }
+        finally {
+            tempDirectory.delete();
+        }
+    }
+
+    public void testLazySorting(){
+
+        final int[] calls = new int[1];
+        Adapter<Integer, Integer> digitAdaptor = new Adapter<Integer, Integer>() {
+            @Override
+            public Integer getValue(final Integer value) {
+                calls[0]++;
+                return value % 10;
+            }
+        };
+
+        List<Integer> numbers = scrambledNumbers(10000);
+        for (int i = 0; i < numbers.size(); i += 97) {
+            numbers.set(i, null);
+        }
+
+        Sorter<Integer> sorter = createSorter(SortDirection.DESCENDING, new SortFactory<Integer, Integer>(true, digitAdaptor));
+        List<Integer> expected = Lists.newArrayList(sorter.sort((Iterable<Integer>) numbers));
+        int sortCalls = calls[0];
+
+        Iterable<Integer> lazy = sorter.sortLazily(numbers);
+        Assert.assertEquals(Lists.newArrayList(lazy), expected);
+
+        calls[0] = 0;
+        Pager<Integer> pager = new Pager<Integer>(new PagerParameter(10, 5), null, sorter);
+        Assert.assertEquals(Lists.newArrayList(pager.page(lazy)), expected.subList(10, 15));
+        Assert.assertTrue(calls[0] < sortCalls / 2);
+    }
+
+    public void testMergeSortedShards(){
+
+        Sorter<Integer> sorter = createSorter(SortDirection.DESCENDING, new SortFactory<Integer, Integer>(false, "integer", new IdentityAdapter<Integer>()));
+        Assert.assertTrue(sorter.isCheap());
+
+        List<List<Integer>> shards = ImmutableList.<List<Integer>>of(ImmutableList.of(9, 5, 5, 1), ImmutableList.<Integer>of(), ImmutableList.of(8, 5, 2), ImmutableList.of(10));
+
+        Iterable<Integer> merged = sorter.merge(shards);
+        Assert.assertEquals(Lists.newArrayList(merged), ImmutableList.of(10, 9, 8, 5, 5, 5, 2, 1));
+        Assert.assertEquals(Lists.newArrayList(merged), ImmutableList.of(10, 9, 8, 5, 5, 5, 2, 1));
+    }
+
+    public void testStringSorting(){
+
+        List<String> strings = Lists.newArrayList("b", "Bz", "a", null, "\u00e4b", "A", "aa", "ab");
+        Adapter<String, String> sAdaptor = new IdentityAdapter<String>();
+
+        Sorter<String> sensitiveSorter = createSorter(SortDirection.ASCENDING, new SortStringFactory<String>(false, StringSortType.CASE_SENSITIVE, null, sAdaptor));
+        Assert.assertEquals(Lists.newArrayList(sensitiveSorter.sort(strings)), Lists.newArrayList("A", "Bz", "a", "aa", "ab", "b", "\u00e4b", null));
+
+        Sorter<String> insensitiveSorter = createSorter(SortDirection.ASCENDING, new SortStringFactory<String>(false, StringSortType.CASE_INSENSITIVE, null, sAdaptor));
+        Assert.assertEquals(Lists.newArrayList(insensitiveSorter.sort(strings)), Lists.newArrayList("a", "A", "aa", "ab", "b", "Bz", "\u00e4b", null));
+
+        Sorter<String> collatedSorter = createSorter(SortDirection.ASCENDING, new SortStringFactory<String>(false, StringSortType.COLLATED_CASE_INSENSITIVE, Locale.GERMAN, sAdaptor));
+        List<String> collated = Lists.newArrayList(collatedSorter.sort(strings));
+        Assert.assertEquals(collated, Lists.newArrayList("a", "A", "aa", "ab", "\u00e4b", "b", "Bz", null));
+
+        // Top-k selection compares the strings directly and must agree with the full sort.
+        Assert.assertEquals(collatedSorter.sortTop(strings, 5), collated.subList(0, 5));
+    }
+
+    public void testRadixSorting(){
+
+        Adapter<Long, Long> lAdaptor = new Adapter<Long, Long>() {
+            @Override
+            public Long getValue(final Long value) {
+                return value % 13 == 0 ? null : value;
+            }
+        };
+        Adapter<Long, Integer> iAdaptor = new Adapter<Long, Integer>() {
+            @Override
+            public Integer getValue(final Long value) {
+                return value % 17 == 0 ? null : (int) (value % 5) - 2;
+            }
+        };
+
+        List<Long> numbers = new ArrayList<Long>();
+        for (long i = 0; i < 20000; i++) {
+            numbers.add((i * 7919) % 3000 - 1500);
+        }
+        numbers.add(null);
+        numbers.add(Long.MIN_VALUE + 1);
+        numbers.add(Long.MAX_VALUE);
+
+        for (SortDirection direction : SortDirection.values()) {
+            List<SortParameter> sortParams = ImmutableList.of(new SortParameter("digit", direction), new SortParameter("value", SortDirection.DESCENDING));
+
+            Sorter<Long> genericSorter = new Sorter<Long>(sortParams, ImmutableMap.<String, SortCriteriaFactory<Long>>of(
+                "digit", new SortFactory<Long, Integer>(false, iAdaptor),
+                "value", new SortFactory<Long, Long>(true, lAdaptor)));
+            Sorter<Long> radixSorter = new Sorter<Long>(sortParams, ImmutableMap.<String, SortCriteriaFactory<Long>>of(
+                "digit", new SortIntegerFactory<Long>(false, iAdaptor),
+                "value", new SortLongFactory<Long>(true, lAdaptor)));
+
+            Assert.assertEquals(new ArrayList<Long>(radixSorter.sort(numbers)), new ArrayList<Long>(genericSorter.sort(numbers)));
+        }
+    }
+
+    public void testHybridSorting(){
+
+        Adapter<Integer, Integer> tensAdaptor = new Adapter<Integer, Integer>() {
+            @Override
+            public Integer getValue(final Integer value) {
+                return value / 10;
+            }
+        };
+        Adapter<Integer, Integer> parityAdaptor = new Adapter<Integer, Integer>() {
+            @Override
+            public Integer getValue(final Integer value) {
+                return value % 2;
+            }
+        };
+
+        List<SortParameter> sortParams = ImmutableList.of(new SortParameter("tens", SortDirection.ASCENDING), new SortParameter("digit", SortDirection.DESCENDING));
+        Map<String, SortCriteriaFactory<Integer>> criteriaMap = ImmutableMap.<String, SortCriteriaFactory<Integer>>of(
+            "tens", new SortFactory<Integer, Integer>(false, "tens", tensAdaptor),
+            "digit", new SortFactory<Integer, Integer>(false, new DigitAdapter()),
+            "parity", new SortFactory<Integer, Integer>(false, parityAdaptor));
+
+        Sorter<Integer> sorter = new Sorter<Integer>(sortParams, criteriaMap);
+        Assert.assertFalse(sorter.isCheap());
+        Assert.assertEquals(sorter.getCheapPrefix().size(), 1);
+
+        List<Integer> numbers = scrambledNumbers(500);
+        List<Integer> expected = new ArrayList<Integer>(sorter.sort(numbers));
+
+        // What the database returns when sorting by the cheap prefix.
+        List<Integer> presorted = createSorter(SortDirection.ASCENDING, new SortFactory<Integer, Integer>(false, tensAdaptor)).sortTop(numbers, numbers.size());
+
+        sorter.setHybrid(true);
+        Assert.assertEquals(new ArrayList<Integer>(sorter.sort(presorted)), expected);
+
+        Pager<Integer> pager = new Pager<Integer>(new PagerParameter(15, 10), null, sorter);
+        Assert.assertEquals(new ArrayList<Integer>(sorter.sort(presorted, pager)), expected.subList(0, 25));
+
+        // Criterias added after a hybrid sort also sort the runs of the next one.
+        List<SortParameter> paritySortParams = ImmutableList.of(new SortParameter("tens", SortDirection.ASCENDING), new SortParameter("parity", SortDirection.ASCENDING));
+        Sorter<Integer> paritySorter = new Sorter<Integer>(paritySortParams, criteriaMap);
+        paritySorter.setHybrid(true);
+        Assert.assertEquals(new ArrayList<Integer>(paritySorter.sort(presorted)), new ArrayList<Integer>(new Sorter<Integer>(paritySortParams, criteriaMap).sort(numbers)));
+
+        paritySorter.add(criteriaMap.get("digit").getCriteria(new SortParameter("digit", SortDirection.DESCENDING)));
+        List<SortParameter> allSortParams = ImmutableList.of(paritySortParams.get(0), paritySortParams.get(1), new SortParameter("digit", SortDirection.DESCENDING));
+        Assert.assertEquals(new ArrayList<Integer>(paritySorter.sort(presorted)), new ArrayList<Integer>(new Sorter<Integer>(allSortParams, criteriaMap).sort(numbers)));
+    }
+
+    public void testNormalizedKeySorting(){
+
+        Adapter<String, Integer> lengthAdaptor = new Adapter<String, Integer>() {
+            @Override
+            public Integer getValue(final String value) {
+                return value.length() == 3 ? null : value.length() - 3;
+            }
+        };
+        Adapter<String, String> sAdaptor = new Adapter<String, String>() {
+            @Override
+            public String getValue(final String value) {
+                return value.startsWith("x") ? null : value;
+            }
+        };
+
+        List<String> strings = new ArrayList<String>();
+        for (int i = 0; i < 2000; i++) {
+            strings.add(Integer.toString((i * 7919) % 2000, 7 + i % 20).replace('1', '\u0000').replace('2', 'x'));
+        }
+        strings.add(null);
+
+        for (StringSortType sortType : StringSortType.values()) {
+            for (SortDirection direction : SortDirection.values()) {
+                List<SortParameter> sortParams = ImmutableList.of(new SortParameter("length", direction), new SortParameter("name", SortDirection.DESCENDING));
+                Map<String, SortCriteriaFactory<String>> criteriaMap = ImmutableMap.<String, SortCriteriaFactory<String>>of(
+                    "length", new SortIntegerFactory<String>(true, lengthAdaptor),
+                    "name", new SortStringFactory<String>(false, sortType, Locale.US, sAdaptor));
+
+                Sorter<String> sorter = new Sorter<String>(sortParams, criteriaMap);
+                List<String> expected = new ArrayList<String>(sorter.sort(strings));
+
+                sorter.setNormalizedKeys(true);
+                Assert.assertEquals(new ArrayList<String>(sorter.sort(strings)), expected);
+            }
+        }
+    }
+
+    public void testTopPerGroupSorting(){
+
+        Adapter<Integer, Integer> groupAdaptor = new Adapter<Integer, Integer>() {
+            @Override
+            public Integer getValue(final Integer value) {
+                return value % 3;
+            }
+        };
+
+        Sorter<Integer> sorter = createSorter(SortDirection.DESCENDING, new SortFactory<Integer, Integer>(false, new DigitAdapter()));
+        List<Integer> numbers = scrambledNumbers(300);
+
+        // Full sort, then keep the first four of every group.
+        Map<Integer, Integer> counts = Maps.newHashMap();
+        List<Integer> expected = new ArrayList<Integer>();
+        for (Integer number : sorter.sort(numbers)) {
+            Integer count = counts.get(number % 3);
+            counts.put(number % 3, count == null ? 1 : count + 1);
+            if (count == null || count < 4) {
+                expected.add(number);
+            }
+        }
+
+        List<Integer> selected = sorter.sortTopPerGroup(numbers, groupAdaptor, 4);
+        Assert.assertEquals(selected, expected);
+
+        Map<Integer, List<Integer>> groups = sorter.selectTopPerGroup(numbers, groupAdaptor, 4);
+        Assert.assertEquals(groups.keySet(), ImmutableSet.of(0, 1, 2));
+        for (Map.Entry<Integer, List<Integer>> group : groups.entrySet()) {
+            Assert.assertEquals(group.getValue().size(), 4);
+        }
+
+        Pager<Integer> pager = new Pager<Integer>(new PagerParameter(4, 4), null, sorter);
+        Assert.assertEquals(Lists.newArrayList(pager.page(selected)), expected.subList(4, 8));
+
+        // A cheap sorter gets the elements in sort order already, so the first ones of every group are kept.
+        Sorter<Integer> cheapSorter = createSorter(SortDirection.DESCENDING, new SortFactory<Integer, Integer>(false, "digit", new DigitAdapter()));
+        Assert.assertTrue(cheapSorter.isCheap());
+        Assert.assertEquals(cheapSorter.sortTopPerGroup(expected, groupAdaptor, 2), sorter.sortTopPerGroup(numbers, groupAdaptor, 2));
+        Assert.assertEquals(cheapSorter.selectTopPerGroup(expected, groupAdaptor, 4), groups);
+    }
+}